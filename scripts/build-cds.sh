@@ -0,0 +1,42 @@
+#!/bin/sh
+# Build the interpreter jar and an AppCDS archive for fast headless starts.
+#
+#   scripts/build-cds.sh        -> out/basic/basic.jar and out/basic/basic.jsa
+#   scripts/basic prog.txt      -> runs a program with the archive
+#
+# The archive is created by a training run over a small program that uses every
+# statement, so the classes on the Runner path are already parsed and verified.
+set -e
+
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+OUT="$ROOT/out/basic"
+
+rm -rf "$OUT"
+mkdir -p "$OUT/classes"
+
+javac -d "$OUT/classes" "$ROOT"/src/main/java/interpreter/*.java
+jar --create --file "$OUT/basic.jar" --main-class interpreter.Runner -C "$OUT/classes" .
+
+# Training program and input
+cat > "$OUT/train.bas" <<'BAS'
+0 LET n = 3
+1 LET i = 0
+2 READ a, b
+3 WHILE i < n
+4 i = i + 1
+5 LET s = (a + b) * i
+6 WEND
+7 IF s > 0 THEN 9
+8 GOTO 10
+9 PRINT s
+10 INPUT x
+11 PRINT x
+12 PRINT "done"
+13 DATA 1, 2
+BAS
+printf '42\n' > "$OUT/train.in"
+
+java -XX:ArchiveClassesAtExit="$OUT/basic.jsa" -jar "$OUT/basic.jar" "$OUT/train.bas" "$OUT/train.in" > /dev/null
+rm "$OUT/train.bas" "$OUT/train.in"
+
+echo "Built $OUT/basic.jar and $OUT/basic.jsa"
@@ -0,0 +1,159 @@
+package interpreter;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Checks that the execution hot path stays within its allocation budget.
+ * Each workload is a small loop that exercises one part of the interpreter. It is run with the
+ * hot-loop compiler off (every statement through the Parser) and on (compiled traces), and the bytes the
+ * interpreter thread allocates are read with ThreadMXBean.getThreadAllocatedBytes.
+ * Running every workload at two loop counts and taking the difference leaves out the fixed cost of
+ * compiling the program and starting the output pipeline, so the result is bytes per executed statement.
+ *
+ * Usage: java -cp [classes] interpreter.AllocationBudget
+ * Exit codes: 0 if every workload is within budget, 1 if any allocated more.
+ */
+public class AllocationBudget {
+    private static final int SMALL = 20_000; // Loop iterations of the first run
+    private static final int LARGE = 120_000; // Loop iterations of the second run
+    private static final int WARMUP_RUNS = 5; // Runs before measuring, so the JVM has compiled the hot path
+
+    /**
+     * A program measured per executed statement.
+     */
+    private static final class Workload {
+        final String name;
+        final String source; // Program text with {n} for the loop count
+        final boolean verbose; // Run with the execution trace on
+        final int statementsPerIteration;
+        final long interpretedBudget; // Bytes per statement allowed with every statement through the Parser
+        final long compiledBudget; // Bytes per statement allowed in compiled traces
+
+        Workload(String name, boolean verbose, int statementsPerIteration, long interpretedBudget, long compiledBudget,
+                 String source) {
+            this.name = name;
+            this.source = source;
+            this.verbose = verbose;
+            this.statementsPerIteration = statementsPerIteration;
+            this.interpretedBudget = interpretedBudget;
+            this.compiledBudget = compiledBudget;
+        }
+    }
+
+    // The Parser costs one small object per statement; compiled traces allocate nothing.
+    // Budgets hold with the default JVM and with the C1-only flags of scripts/basic.
+    private static final Workload[] WORKLOADS = {
+            // IF and GOTO jumps only
+            new Workload("dispatch", false, 2, 40, 2,
+                    "10 LET i = 0\n"
+                    + "20 LET n = {n}\n"
+                    + "30 i = i + 1\n"
+                    + "40 IF i < n THEN 30\n"
+                    + "50 PRINT i\n"),
+            // Variable reads and writes: LET, assignment, WHILE condition
+            new Workload("variables", false, 6, 40, 2,
+                    "10 LET i = 0\n"
+                    + "20 LET a = 1\n"
+                    + "30 LET b = 2\n"
+                    + "40 WHILE i < {n}\n"
+                    + "50 LET a = b\n"
+                    + "60 b = a\n"
+                    + "70 LET c = a\n"
+                    + "80 i = i + 1\n"
+                    + "90 WEND\n"
+                    + "100 PRINT c\n"),
+            // Long expressions with every operator and parentheses
+            new Workload("arithmetic", false, 5, 40, 2,
+                    "10 LET i = 0\n"
+                    + "20 WHILE i < {n}\n"
+                    + "30 x = i * 3 + 7 % 11 - 2 / 4\n"
+                    + "40 y = (x + 1) * (i - 2) / (x + 3)\n"
+                    + "50 i = i + 1\n"
+                    + "60 WEND\n"
+                    + "70 PRINT y\n"),
+            // PRINT of whole and fractional numbers
+            new Workload("print", false, 6, 40, 2,
+                    "10 LET i = 0\n"
+                    + "20 WHILE i < {n}\n"
+                    + "30 PRINT i\n"
+                    + "40 x = i / 8\n"
+                    + "50 PRINT x\n"
+                    + "60 i = i + 1\n"
+                    + "70 WEND\n"),
+            // PRINT of fractions that need 16 or 17 significant digits
+            new Workload("fractions", false, 7, 40, 2,
+                    "10 LET i = 0\n"
+                    + "20 WHILE i < {n}\n"
+                    + "30 x = i / 7\n"
+                    + "40 PRINT x\n"
+                    + "50 y = i / 3\n"
+                    + "60 PRINT y\n"
+                    + "70 i = i + 1\n"
+                    + "80 WEND\n"),
+            // Execution trace: "Executing line" and assignment messages with numbers
+            new Workload("trace", true, 4, 40, 2,
+                    "10 LET i = 0\n"
+                    + "20 WHILE i < {n}\n"
+                    + "30 LET x = i / 4\n"
+                    + "40 i = i + 1\n"
+                    + "50 WEND\n"),
+    };
+
+    public static void main(String[] args) throws IOException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            System.err.println("BASIC> THIS JVM CANNOT MEASURE ALLOCATION.");
+            System.exit(2);
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        Interpreter interpreter = new Interpreter();
+        interpreter.setOutput(Channels.newChannel(OutputStream.nullOutputStream()));
+
+        boolean passed = true;
+        System.out.printf("%-12s %-12s %14s %10s%n", "workload", "mode", "bytes/stmt", "budget");
+        for (Workload workload : WORKLOADS) {
+            interpreter.setVerbose(workload.verbose);
+            ProgramStore small = program(interpreter, workload, SMALL);
+            ProgramStore large = program(interpreter, workload, LARGE);
+            for (boolean jit : new boolean[]{false, true}) {
+                interpreter.setJitEnabled(jit);
+                for (int i = 0; i < WARMUP_RUNS; i++) {
+                    interpreter.runProgram(large);
+                }
+                long smallBytes = allocated(threads, interpreter, small);
+                long largeBytes = allocated(threads, interpreter, large);
+                double perStatement = (double) Math.max(0, largeBytes - smallBytes)
+                        / ((long) (LARGE - SMALL) * workload.statementsPerIteration);
+
+                long budget = jit ? workload.compiledBudget : workload.interpretedBudget;
+                boolean ok = perStatement <= budget;
+                passed &= ok;
+                System.out.printf("%-12s %-12s %14.1f %10d%s%n", workload.name, jit ? "compiled" : "interpreted",
+                        perStatement, budget, ok ? "" : "  OVER BUDGET");
+            }
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static ProgramStore program(Interpreter interpreter, Workload workload, int iterations)
+            throws IOException {
+        String source = workload.source.replace("{n}", Integer.toString(iterations));
+        byte[] text = source.getBytes(StandardCharsets.UTF_8);
+        return interpreter.readProgram(Channels.newChannel(new ByteArrayInputStream(text)));
+    }
+
+    // Bytes allocated by this thread while running the program once
+    private static long allocated(com.sun.management.ThreadMXBean threads, Interpreter interpreter,
+                                  ProgramStore programLines) {
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        interpreter.runProgram(programLines);
+        return threads.getThreadAllocatedBytes(thread) - before;
+    }
+}
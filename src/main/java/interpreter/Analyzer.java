@@ -0,0 +1,406 @@
+package interpreter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Whole-program check that runs when a program is loaded and before it runs.
+ * It reports every error it finds with its line number, instead of stopping at the first one:
+ * - syntax errors, such as a missing THEN or '='
+ * - GOTO, GOSUB and THEN targets that do not exist
+ * - WEND without WHILE and WHILE without WEND
+ * - variables that are read before any path through the program assigns them
+ * It also fills in the control-flow data of the Program (jump targets and WHILE/WEND pairs),
+ * so the interpreter does not have to look for them or check them while running.
+ */
+class Analyzer {
+    private final Program program;
+    private final TreeMap<Integer, List<String>> errors = new TreeMap<>(); // Statement index -> messages
+    private final TokenType[] endings;
+    private final Map<String, Integer> variables = new HashMap<>(); // Variable name -> bit in the dataflow sets
+    private final List<int[]> accesses = new ArrayList<>(); // Per line: variable reads and writes in order
+    private final List<Token> names = new ArrayList<>(); // First token seen for each variable, for messages
+
+    // Current line while scanning
+    private int index;
+    private List<Token> tokens;
+    private int current;
+    private int[] lineAccesses;
+    private int accessCount;
+
+    Analyzer(Program program) {
+        this.program = program;
+        this.endings = program.endings;
+    }
+
+    /**
+     * Check the program and fill in its jump targets and loop pairs.
+     *
+     * @return Every error found as "Line N: message", in line order. Empty if the program is valid.
+     */
+    List<String> analyze() {
+        for (int i = 0; i < program.size(); i++) {
+            scanLine(i);
+        }
+        pairLoops();
+        checkVariables();
+
+        List<String> messages = new ArrayList<>();
+        for (Map.Entry<Integer, List<String>> entry : errors.entrySet()) {
+            for (String message : entry.getValue()) {
+                messages.add("Line " + program.lineNumbers[entry.getKey()] + ": " + message);
+            }
+        }
+        return messages;
+    }
+
+    private void error(int statement, String message) {
+        errors.computeIfAbsent(statement, k -> new ArrayList<>()).add(message);
+    }
+
+    // Parse every statement on a line the way Parser would, without running it
+    private void scanLine(int i) {
+        index = i;
+        tokens = program.tokens.get(i);
+        current = 0;
+        lineAccesses = new int[8];
+        accessCount = 0;
+        program.jumpTargets[i] = -1;
+        program.loopPartners[i] = -1;
+        endings[i] = null;
+
+        if (program.lexErrors[i] != null) {
+            error(i, program.lexErrors[i]);
+        } else {
+            try {
+                scanStatements();
+            } catch (RuntimeException e) {
+                endings[i] = null; // Keep analysing the rest of the program
+                error(i, e.getMessage());
+            }
+        }
+        accesses.add(Arrays.copyOf(lineAccesses, accessCount));
+    }
+
+    private void scanStatements() {
+        while (!isAtEnd()) {
+            Token token = advance();
+            switch (token.type) {
+                case LET:
+                    Token identifier = consume(TokenType.IDENTIFIER, "Expect variable name after LET.");
+                    consume(TokenType.EQUALS, "Expect '=' after variable name.");
+                    scanExpression();
+                    write(identifier);
+                    break;
+                case IDENTIFIER:
+                    consume(TokenType.EQUALS, "Expect '=' after variable name.");
+                    scanExpression();
+                    write(token);
+                    break;
+                case PRINT:
+                    // PRINT reports an undefined variable itself, so only the syntax is checked
+                    Token expression = advance();
+                    if (expression.type != TokenType.STRING && expression.type != TokenType.IDENTIFIER) {
+                        throw new RuntimeException("Expect expression to print (string or variable).");
+                    }
+                    break;
+                case READ:
+                    do {
+                        write(consume(TokenType.IDENTIFIER, "Expect variable name after READ."));
+                    } while (match(TokenType.COMMA));
+                    break;
+                case DATA:
+                    // Values are only collected from lines that start with DATA, and the list runs to the end of it
+                    if (current != 1) {
+                        throw new RuntimeException("DATA must start its line.");
+                    }
+                    do {
+                        match(TokenType.MINUS);
+                        consume(TokenType.NUMBER, "Expect number in DATA statement.");
+                    } while (match(TokenType.COMMA));
+                    endOfLine("DATA");
+                    return;
+                case INPUT:
+                    do {
+                        write(consume(TokenType.IDENTIFIER, "Expect variable name after INPUT."));
+                    } while (match(TokenType.COMMA));
+                    endings[index] = TokenType.INPUT;
+                    endOfLine("INPUT");
+                    return;
+                case IF:
+                    scanCondition("Expected comparison operator.");
+                    consume(TokenType.THEN, "Expected THEN after condition.");
+                    program.jumpTargets[index] = scanTarget("THEN");
+                    endings[index] = TokenType.IF;
+                    endOfLine("IF");
+                    return;
+                case GOTO:
+                    program.jumpTargets[index] = scanTarget("GOTO");
+                    endings[index] = TokenType.GOTO;
+                    endOfLine("GOTO");
+                    return;
+                case GOSUB:
+                    program.jumpTargets[index] = scanTarget("GOSUB");
+                    endings[index] = TokenType.GOSUB;
+                    endOfLine("GOSUB");
+                    return;
+                case RETURN:
+                    endings[index] = TokenType.RETURN;
+                    endOfLine("RETURN");
+                    return;
+                case WHILE:
+                    scanCondition("Expected comparison operator in WHILE statement");
+                    endings[index] = TokenType.WHILE;
+                    endOfLine("WHILE");
+                    return;
+                case WEND:
+                    endings[index] = TokenType.WEND;
+                    endOfLine("WEND");
+                    return;
+                default:
+                    throw new RuntimeException("Unexpected token: " + token.type);
+            }
+        }
+    }
+
+    // Statements that decide the next line end it; anything after them would be ignored
+    private void endOfLine(String keyword) {
+        if (!isAtEnd()) {
+            throw new RuntimeException("Unexpected " + peek().type + " after " + keyword + ".");
+        }
+    }
+
+    private int scanTarget(String keyword) {
+        Token target = advance();
+        if (target.type != TokenType.NUMBER) {
+            throw new RuntimeException("Expected line number after " + keyword + ".");
+        }
+        int targetLine = ((Double) target.literal).intValue();
+        int targetIndex = program.indexOf(targetLine);
+        if (targetIndex == -1) {
+            throw new RuntimeException("Invalid " + keyword + " line number: " + targetLine);
+        }
+        return targetIndex;
+    }
+
+    private void scanCondition(String message) {
+        scanValue();
+        if (!isComparisonOperator(advance().type)) {
+            throw new RuntimeException(message);
+        }
+        scanValue();
+    }
+
+    private void scanExpression() {
+        scanValue();
+        while (!isAtEnd() && isArithmeticOperator(peek().type)) {
+            advance();
+            scanValue();
+        }
+    }
+
+    private void scanValue() {
+        Token token = advance();
+        if (token.type == TokenType.NUMBER) {
+            return;
+        } else if (token.type == TokenType.IDENTIFIER) {
+            read(token);
+            return;
+        } else if (token.type == TokenType.LEFT_PAREN) {
+            scanExpression();
+            consume(TokenType.RIGHT_PAREN, "Expect ')' after expression.");
+            return;
+        }
+        throw new RuntimeException("Expect number or variable.");
+    }
+
+    private void read(Token identifier) {
+        addAccess(variable(identifier) << 1);
+    }
+
+    private void write(Token identifier) {
+        addAccess((variable(identifier) << 1) | 1);
+    }
+
+    private void addAccess(int access) {
+        if (accessCount == lineAccesses.length) {
+            lineAccesses = Arrays.copyOf(lineAccesses, accessCount * 2);
+        }
+        lineAccesses[accessCount++] = access;
+    }
+
+    private int variable(Token identifier) {
+        Integer bit = variables.get(identifier.lexeme);
+        if (bit == null) {
+            bit = variables.size();
+            variables.put(identifier.lexeme, bit);
+            names.add(identifier);
+        }
+        return bit;
+    }
+
+    // Match every WEND with the closest open WHILE before it
+    private void pairLoops() {
+        Deque<Integer> open = new ArrayDeque<>();
+        for (int i = 0; i < program.size(); i++) {
+            if (endings[i] == TokenType.WHILE) {
+                open.push(i);
+            } else if (endings[i] == TokenType.WEND) {
+                if (open.isEmpty()) {
+                    error(i, "WEND without WHILE");
+                } else {
+                    int start = open.pop();
+                    program.loopPartners[start] = i;
+                    program.loopPartners[i] = start;
+                }
+            }
+        }
+        for (int start : open) {
+            error(start, "WHILE without WEND");
+        }
+    }
+
+    // Dataflow over the line graph: a read is an error if no path from the start assigns the variable first
+    private void checkVariables() {
+        int size = program.size();
+        if (size == 0) {
+            return;
+        }
+
+        List<Integer> returnSites = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (endings[i] == TokenType.GOSUB && i + 1 < size) {
+                returnSites.add(i + 1);
+            }
+        }
+
+        BitSet[] in = new BitSet[size]; // Variables that may be assigned on entry, null while unreachable
+        in[0] = new BitSet();
+        Deque<Integer> worklist = new ArrayDeque<>();
+        worklist.add(0);
+        while (!worklist.isEmpty()) {
+            int i = worklist.poll();
+            BitSet out = (BitSet) in[i].clone();
+            for (int access : accesses.get(i)) {
+                if ((access & 1) == 1) {
+                    out.set(access >> 1);
+                }
+            }
+            for (int next : successors(i, returnSites)) {
+                if (next >= size) {
+                    continue; // Program ends
+                }
+                if (in[next] == null) {
+                    in[next] = (BitSet) out.clone();
+                    worklist.add(next);
+                } else {
+                    BitSet merged = (BitSet) in[next].clone();
+                    merged.or(out);
+                    if (!merged.equals(in[next])) {
+                        in[next] = merged;
+                        worklist.add(next);
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < size; i++) {
+            if (in[i] == null) {
+                continue; // Unreachable lines never run
+            }
+            BitSet assigned = (BitSet) in[i].clone();
+            BitSet reported = new BitSet();
+            for (int access : accesses.get(i)) {
+                int bit = access >> 1;
+                if ((access & 1) == 1) {
+                    assigned.set(bit);
+                } else if (!assigned.get(bit) && !reported.get(bit)) {
+                    reported.set(bit);
+                    error(i, "Undefined variable: " + names.get(bit).lexeme);
+                }
+            }
+        }
+    }
+
+    private int[] successors(int i, List<Integer> returnSites) {
+        if (endings[i] == null) {
+            return new int[]{i + 1};
+        }
+        switch (endings[i]) {
+            case GOTO:
+                return new int[]{program.jumpTargets[i]};
+            case IF:
+                return new int[]{program.jumpTargets[i], i + 1};
+            case GOSUB:
+                return new int[]{program.jumpTargets[i]}; // Comes back through RETURN
+            case RETURN:
+                int[] sites = new int[returnSites.size()];
+                for (int s = 0; s < sites.length; s++) {
+                    sites[s] = returnSites.get(s);
+                }
+                return sites;
+            case WHILE:
+                int wend = program.loopPartners[i];
+                return wend == -1 ? new int[]{i + 1} : new int[]{i + 1, wend + 1};
+            case WEND:
+                int start = program.loopPartners[i];
+                return start == -1 ? new int[]{i + 1} : new int[]{start}; // Unmatched WEND is already an error
+            default:
+                return new int[]{i + 1};
+        }
+    }
+
+    private boolean isArithmeticOperator(TokenType type) {
+        return type == TokenType.PLUS || type == TokenType.MINUS ||
+                type == TokenType.MULTIPLY || type == TokenType.DIVIDE ||
+                type == TokenType.MOD;
+    }
+
+    private boolean isComparisonOperator(TokenType type) {
+        return type == TokenType.LESS || type == TokenType.LESS_EQUAL ||
+                type == TokenType.GREATER || type == TokenType.GREATER_EQUAL ||
+                type == TokenType.EQUALS || type == TokenType.NOT_EQUALS;
+    }
+
+    private Token consume(TokenType type, String message) {
+        if (check(type)) {
+            return advance();
+        }
+        throw new RuntimeException(message);
+    }
+
+    private boolean match(TokenType type) {
+        if (check(type)) {
+            advance();
+            return true;
+        }
+        return false;
+    }
+
+    private boolean check(TokenType type) {
+        if (isAtEnd()) return false;
+        return peek().type == type;
+    }
+
+    private boolean isAtEnd() {
+        return peek().type == TokenType.EOF;
+    }
+
+    private Token peek() {
+        return tokens.get(current);
+    }
+
+    private Token advance() {
+        if (!isAtEnd()) {
+            current++;
+        }
+        return tokens.get(current - 1);
+    }
+}
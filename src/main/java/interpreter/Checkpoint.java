@@ -0,0 +1,377 @@
+package interpreter;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * Periodic snapshots of a running program, so a long job can continue after a crash or restart.
+ * A snapshot holds the statement to run next, the variables, the GOSUB return stack, the DATA pointer,
+ * and how many bytes of input and output the program had used at that point.
+ *
+ * The file is a log: a header, then records that each hold either the full state or only the variables
+ * changed since the previous record. After COMPACT_AFTER changes-only records the file is rewritten with
+ * a single full record. Every record has a CRC, so a record torn by a crash is ignored on load.
+ * The interpreter thread only copies the changed values; encoding and disk writes happen on a background
+ * thread, which also waits until the output up to the snapshot has been written.
+ *
+ * Format (DataOutputStream):
+ * - header: int MAGIC, int VERSION, long program fingerprint
+ * - record: int payload length, int CRC32 of the payload, payload
+ * - payload: byte FULL or DELTA, int next statement, long output offset, long input offset, int DATA pointer,
+ *   int GOSUB depth, that many int return indices, int new variable count, their names (UTF),
+ *   int assigned variable count, that many (int slot, double value)
+ */
+public class Checkpoint implements AutoCloseable {
+    private static final int MAGIC = 0x4243504B; // "BCPK"
+    private static final int VERSION = 1;
+    private static final byte FULL = 'F';
+    private static final byte DELTA = 'D';
+    static final int COMPACT_AFTER = 64; // Changes-only records before the file is rewritten
+
+    /**
+     * Execution state read back from a checkpoint file.
+     */
+    public static final class State {
+        long fingerprint; // Fingerprint of the program the state belongs to
+        int next; // Statement index to run next
+        long outputOffset; // Bytes of output printed before the snapshot
+        long inputOffset; // Bytes of INPUT data consumed before the snapshot
+        int dataPointer;
+        int[] returnStack = new int[0];
+        List<String> names = new ArrayList<>(); // Variable names by slot
+        double[] values = new double[0]; // Variable values by slot
+        boolean[] defined = new boolean[0];
+
+        /**
+         * @return Bytes of output printed before the snapshot, where a resumed run continues its output.
+         */
+        public long outputOffset() {
+            return outputOffset;
+        }
+    }
+
+    private final File file;
+    private final long fingerprint;
+    private final OutputPipeline output;
+    private final long outputBase; // Output offset where this run started
+    private final ExecutorService writer;
+    private Future<?> pending; // Snapshot being written
+    private volatile IOException failure;
+    private boolean failed = false; // Failure already reported, no more snapshots
+
+    // The last captured state, to find what changed since
+    private double[] lastValues = new double[0];
+    private boolean[] lastDefined = new boolean[0];
+    private int lastSize = 0;
+    private int deltas = COMPACT_AFTER; // Start with a full record
+
+    /**
+     * @param file        The checkpoint file. It is replaced by the first snapshot.
+     * @param program     The running program.
+     * @param output      The program's output, to know how much of it a snapshot covers.
+     * @param outputBase  Output offset where this run starts: 0, or the offset of the state it resumed from.
+     */
+    public Checkpoint(File file, Program program, OutputPipeline output, long outputBase) {
+        this.file = file;
+        this.fingerprint = fingerprint(program);
+        this.output = output;
+        this.outputBase = outputBase;
+        this.writer = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "basic-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Take a snapshot and hand it to the background writer. Called between statements by the interpreter thread.
+     * The snapshot is skipped if the previous one is still being written.
+     *
+     * @param next        The statement index to run next.
+     * @param symbolTable The program's variables.
+     * @param input       The INPUT source, null if the program has not used INPUT yet.
+     */
+    public void capture(int next, SymbolTable symbolTable, int[] returnStack, int returnDepth,
+                        int dataPointer, NumberReader input) {
+        if (failed) {
+            return;
+        }
+        if (failure != null) {
+            failed = true;
+            System.err.println("BASIC> CHECKPOINT FAILED: " + failure.getMessage());
+            return;
+        }
+        if (pending != null && !pending.isDone()) {
+            return; // Still writing: never make the program wait for the disk
+        }
+
+        boolean full = deltas >= COMPACT_AFTER;
+        int size = symbolTable.size();
+        int firstNew = full ? 0 : lastSize;
+        String[] newNames = new String[size - firstNew];
+        for (int slot = firstNew; slot < size; slot++) {
+            newNames[slot - firstNew] = symbolTable.name(slot);
+        }
+
+        // Copy the values assigned or changed since the last snapshot
+        if (lastValues.length < size) {
+            lastValues = Arrays.copyOf(lastValues, Math.max(size, lastValues.length * 2));
+            lastDefined = Arrays.copyOf(lastDefined, lastValues.length);
+        }
+        int[] slots = new int[size];
+        double[] values = new double[size];
+        int changed = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (!symbolTable.isDefined(slot)) {
+                continue;
+            }
+            double value = symbolTable.get(slot);
+            if (full || !lastDefined[slot] || Double.doubleToRawLongBits(value) != Double.doubleToRawLongBits(lastValues[slot])) {
+                slots[changed] = slot;
+                values[changed] = value;
+                changed++;
+                lastValues[slot] = value;
+                lastDefined[slot] = true;
+            }
+        }
+        lastSize = size;
+        deltas = full ? 0 : deltas + 1;
+
+        int[] stack = Arrays.copyOf(returnStack, returnDepth);
+        long outputPosition = output.flushAsync();
+        long inputOffset = input != null ? input.position() : 0;
+        int changedCount = changed;
+        pending = writer.submit(() -> {
+            try {
+                byte[] record = encode(full, next, outputBase + outputPosition, inputOffset, dataPointer, stack,
+                        newNames, slots, values, changedCount);
+                // The snapshot must not claim output that never reached the channel
+                if (output.awaitWritten(outputPosition)) {
+                    write(full, record);
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+        });
+    }
+
+    /**
+     * Wait for the last snapshot to be written and stop the writer thread.
+     *
+     * @param completed true if the program ran to the end: the checkpoint file is then deleted.
+     */
+    public void close(boolean completed) {
+        writer.shutdown();
+        try {
+            if (pending != null) {
+                pending.get();
+            }
+        } catch (Exception e) {
+            // The failure is recorded by the task itself
+        }
+        if (completed) {
+            file.delete();
+        }
+    }
+
+    @Override
+    public void close() {
+        close(false);
+    }
+
+    private byte[] encode(boolean full, int next, long outputOffset, long inputOffset, int dataPointer, int[] stack,
+                          String[] newNames, int[] slots, double[] values, int changed) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + 8 * changed);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(full ? FULL : DELTA);
+        out.writeInt(next);
+        out.writeLong(outputOffset);
+        out.writeLong(inputOffset);
+        out.writeInt(dataPointer);
+        out.writeInt(stack.length);
+        for (int returnIndex : stack) {
+            out.writeInt(returnIndex);
+        }
+        out.writeInt(newNames.length);
+        for (String name : newNames) {
+            out.writeUTF(name);
+        }
+        out.writeInt(changed);
+        for (int i = 0; i < changed; i++) {
+            out.writeInt(slots[i]);
+            out.writeDouble(values[i]);
+        }
+        out.flush();
+
+        byte[] payload = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(8 + payload.length);
+        record.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        return record.array();
+    }
+
+    private void write(boolean full, byte[] record) throws IOException {
+        if (full) {
+            // Compaction: write header and full record to a new file and swap it in
+            File temp = new File(file.getPath() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer header = ByteBuffer.allocate(16).putInt(MAGIC).putInt(VERSION).putLong(fingerprint);
+                header.flip();
+                writeFully(channel, header);
+                writeFully(channel, ByteBuffer.wrap(record));
+                channel.force(false);
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } else {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                writeFully(channel, ByteBuffer.wrap(record));
+                channel.force(false);
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Read the latest complete state from a checkpoint file.
+     *
+     * @param file    The checkpoint file.
+     * @param program The program about to run; a file written by another program is rejected from its header.
+     * @return The state, or null if the file does not exist or holds no complete record.
+     * @throws IOException If the file cannot be read or is not a checkpoint file.
+     * @throws RuntimeException If the file belongs to a different program.
+     */
+    public static State load(File file, Program program) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a checkpoint file: " + file.getPath());
+            }
+            State state = new State();
+            state.fingerprint = in.readLong();
+            if (state.fingerprint != fingerprint(program)) {
+                throw new RuntimeException("Checkpoint does not match the program.");
+            }
+            boolean any = false;
+            while (true) {
+                byte[] payload;
+                try {
+                    int length = in.readInt();
+                    int expectedCrc = in.readInt();
+                    if (length < 0 || length > file.length()) {
+                        break; // Torn record
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                    CRC32 crc = new CRC32();
+                    crc.update(payload);
+                    if ((int) crc.getValue() != expectedCrc) {
+                        break; // Torn record: the state before it is the latest
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+                apply(state, new DataInputStream(new ByteArrayInputStream(payload)));
+                any = true;
+            }
+            return any ? state : null;
+        }
+    }
+
+    private static void apply(State state, DataInputStream in) throws IOException {
+        if (in.readByte() == FULL) {
+            state.names.clear();
+            state.values = new double[0];
+            state.defined = new boolean[0];
+        }
+        state.next = in.readInt();
+        state.outputOffset = in.readLong();
+        state.inputOffset = in.readLong();
+        state.dataPointer = in.readInt();
+        state.returnStack = new int[in.readInt()];
+        for (int i = 0; i < state.returnStack.length; i++) {
+            state.returnStack[i] = in.readInt();
+        }
+        int newNames = in.readInt();
+        for (int i = 0; i < newNames; i++) {
+            state.names.add(in.readUTF());
+        }
+        state.values = Arrays.copyOf(state.values, state.names.size());
+        state.defined = Arrays.copyOf(state.defined, state.names.size());
+        int changed = in.readInt();
+        for (int i = 0; i < changed; i++) {
+            int slot = in.readInt();
+            state.values[slot] = in.readDouble();
+            state.defined[slot] = true;
+        }
+    }
+
+    /**
+     * Put a loaded state back into the interpreter's variables.
+     *
+     * @param program     The program about to run.
+     * @param symbolTable The (empty) variables to fill.
+     * @throws RuntimeException If the state belongs to a different program.
+     */
+    static void restore(State state, Program program, SymbolTable symbolTable) {
+        check(state, program);
+        for (int slot = 0; slot < state.names.size(); slot++) {
+            symbolTable.slot(state.names.get(slot));
+            if (state.defined[slot]) {
+                symbolTable.set(slot, state.values[slot]);
+            }
+        }
+    }
+
+    /**
+     * Make sure a loaded state was written by this program, before anything acts on it.
+     *
+     * @throws RuntimeException If the program differs or the next statement is out of range.
+     */
+    static void check(State state, Program program) {
+        if (state.fingerprint != fingerprint(program) || state.next < 0 || state.next >= program.size()) {
+            throw new RuntimeException("Checkpoint does not match the program.");
+        }
+    }
+
+    // FNV-1a over the line numbers and code, so a checkpoint is only resumed with the program that wrote it
+    static long fingerprint(Program program) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < program.size(); i++) {
+            hash = (hash ^ program.lineNumbers[i]) * 0x100000001b3L;
+            String code = program.code[i];
+            for (int c = 0; c < code.length(); c++) {
+                hash = (hash ^ code.charAt(c)) * 0x100000001b3L;
+            }
+            hash = (hash ^ '\n') * 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -1,10 +1,11 @@
 package interpreter;
 
 import java.io.*;
-import java.util.HashMap;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
 /**
  * Interpreter class to handle saving, loading, and running BASIC programs.
  */
@@ -12,12 +13,120 @@ public class Interpreter {
 
     private static final String SAVES_DIRECTORY = "saves";
 
+    static final int DEFAULT_MAX_GOSUB_DEPTH = 256;
+    private static final int CHECKPOINT_POLL = 1024; // Statements between looks at the checkpoint clock
+
+    private boolean verbose = true; // Print banners and trace every executed line
+    private int maxGosubDepth = DEFAULT_MAX_GOSUB_DEPTH; // Size of the GOSUB return stack
+    private boolean jitEnabled = true; // Compile hot loops with TraceJit
+    private WritableByteChannel outputChannel = OutputPipeline.STDOUT; // Where program output goes
+    private File checkpointFile = null; // Where execution state is saved, null for no checkpoints
+    private long checkpointIntervalMillis = 60_000;
+    private boolean resume = false; // Continue from checkpointFile if it exists
+    private String inputPrompt = null; // Printed before INPUT reads from stdin
+    private int flushThreshold = OutputPipeline.DEFAULT_FLUSH_THRESHOLD; // SIZE flush policy of the output
+    private long flushIntervalMillis = OutputPipeline.DEFAULT_FLUSH_INTERVAL_MILLIS; // TIME flush policy of the output
+
+    /**
+     * Turn the execution trace and the RUN banners on or off.
+     *
+     * @param verbose false to print only the program's own output.
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Set how deeply GOSUB calls may nest before the program stops with an error.
+     *
+     * @param maxGosubDepth The size of the return stack.
+     */
+    public void setMaxGosubDepth(int maxGosubDepth) {
+        if (maxGosubDepth < 1) {
+            throw new IllegalArgumentException("GOSUB depth must be at least 1.");
+        }
+        this.maxGosubDepth = maxGosubDepth;
+    }
+
+    /**
+     * Send program output to a channel other than stdout. The channel is not closed by the interpreter.
+     *
+     * @param outputChannel The channel for everything the program prints.
+     */
+    public void setOutput(WritableByteChannel outputChannel) {
+        this.outputChannel = outputChannel;
+    }
+
+    /**
+     * Set when program output is written while the program runs, see OutputPipeline.
+     * A small threshold or interval shows output sooner; large ones write in bigger blocks.
+     * All output is always written when the program ends.
+     *
+     * The output buffer grows to hold two thresholds.
+     *
+     * @param flushThreshold      Number of waiting bytes that triggers a write, 1 to OutputPipeline.MAX_FLUSH_THRESHOLD.
+     * @param flushIntervalMillis Longest time output may wait before it is written.
+     */
+    public void setFlushPolicy(int flushThreshold, long flushIntervalMillis) {
+        if (flushThreshold < 1 || flushThreshold > OutputPipeline.MAX_FLUSH_THRESHOLD || flushIntervalMillis < 1) {
+            throw new IllegalArgumentException("Flush threshold must be 1 to " + OutputPipeline.MAX_FLUSH_THRESHOLD
+                    + " bytes and the interval positive.");
+        }
+        this.flushThreshold = flushThreshold;
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    /**
+     * Turn the hot-loop compiler on or off. With it off every statement goes through the Parser.
+     *
+     * @param jitEnabled false to interpret everything.
+     */
+    public void setJitEnabled(boolean jitEnabled) {
+        this.jitEnabled = jitEnabled;
+    }
+
+    /**
+     * Save the execution state of every run to a file at regular intervals, see Checkpoint.
+     * The file is deleted when a program runs to the end.
+     *
+     * @param checkpointFile   The checkpoint file, or null for no checkpoints.
+     * @param intervalMillis   Time between snapshots.
+     */
+    public void setCheckpoint(File checkpointFile, long intervalMillis) {
+        if (intervalMillis < 1) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive.");
+        }
+        this.checkpointFile = checkpointFile;
+        this.checkpointIntervalMillis = intervalMillis;
+    }
+
+    /**
+     * Continue runs from the checkpoint file, if there is one, instead of from the first line.
+     * INPUT skips the data the checkpointed run had read. A file output channel is cut back to the
+     * output the checkpointed run had printed, or emptied when there is no checkpoint to resume from;
+     * other channels get the output from that point on.
+     *
+     * @param resume true to resume.
+     */
+    public void setResume(boolean resume) {
+        this.resume = resume;
+    }
+
+    /**
+     * Print a prompt each time INPUT waits for values from stdin. INPUT from a file has no prompt.
+     *
+     * @param inputPrompt The prompt, or null for none.
+     */
+    public void setInputPrompt(String inputPrompt) {
+        this.inputPrompt = inputPrompt;
+    }
+
     /**
      * Save the current program lines to a file.
      *
      * @param programLines The program lines to save.
      */
-    public void saveProgram(TreeMap<Integer, String> programLines) {
+    public void saveProgram(ProgramStore programLines) {
         if (programLines.isEmpty()) {
             System.out.println("BASIC> NO PROGRAM LINES TO SAVE.");
             return;
@@ -31,27 +140,29 @@ public class Interpreter {
 
         // Ask the user for a filename
         System.out.println("BASIC> ENTER A NAME TO SAVE THE PROGRAM:");
-        BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+        String line;
         try {
-            String filename = reader.readLine().trim();
-            if (filename.isEmpty()) {
-                System.out.println("BASIC> INVALID NAME.");
-                return;
-            }
+            line = NumberReader.stdin().nextLine(); // The REPL's reader, so typed-ahead lines are not lost
+        } catch (RuntimeException e) {
+            System.out.println("BASIC> ERROR READING INPUT.");
+            return;
+        }
+        String filename = line == null ? "" : line.trim();
+        if (filename.isEmpty()) {
+            System.out.println("BASIC> INVALID NAME.");
+            return;
+        }
 
-            // Save to file
-            File saveFile = new File(SAVES_DIRECTORY, filename + ".txt");
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(saveFile))) {
-                for (Map.Entry<Integer, String> entry : programLines.entrySet()) {
-                    writer.write(entry.getKey() + " " + entry.getValue());
-                    writer.newLine();
-                }
-                System.out.println("BASIC> PROGRAM SAVED AS " + filename + ".txt");
-            } catch (IOException e) {
-                System.out.println("BASIC> ERROR WHILE SAVING PROGRAM.");
+        // Save to file
+        File saveFile = new File(SAVES_DIRECTORY, filename + ".txt");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(saveFile))) {
+            for (int i = 0; i < programLines.size(); i++) {
+                writer.write(programLines.lineNumber(i) + " " + programLines.code(i));
+                writer.newLine();
             }
+            System.out.println("BASIC> PROGRAM SAVED AS " + filename + ".txt");
         } catch (IOException e) {
-            System.out.println("BASIC> ERROR READING INPUT.");
+            System.out.println("BASIC> ERROR WHILE SAVING PROGRAM.");
         }
     }
 
@@ -61,18 +172,10 @@ public class Interpreter {
      * @param programFile The file to load the program from.
      * @return The loaded program lines.
      */
-    public TreeMap<Integer, String> loadProgram(File programFile) {
-        TreeMap<Integer, String> loadedLines = new TreeMap<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(programFile))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                int spaceIndex = line.indexOf(" ");
-                if (spaceIndex != -1) {
-                    int lineNumber = Integer.parseInt(line.substring(0, spaceIndex));
-                    String code = line.substring(spaceIndex + 1).trim();
-                    loadedLines.put(lineNumber, code);
-                }
-            }
+    public ProgramStore loadProgram(File programFile) {
+        ProgramStore loadedLines = new ProgramStore();
+        try {
+            loadedLines = readProgram(programFile);
             System.out.println("BASIC> PROGRAM LOADED SUCCESSFULLY.");
         } catch (IOException | NumberFormatException e) {
             System.out.println("BASIC> ERROR WHILE LOADING PROGRAM.");
@@ -80,48 +183,239 @@ public class Interpreter {
         return loadedLines;
     }
 
+    /**
+     * Read program lines from a file without printing anything.
+     *
+     * @param programFile The file to read.
+     * @return The program lines.
+     * @throws IOException           If the file cannot be read.
+     * @throws NumberFormatException If a line number is invalid.
+     */
+    public ProgramStore readProgram(File programFile) throws IOException {
+        return ProgramStore.read(programFile.toPath());
+    }
+
+    /**
+     * Read program lines from a channel without printing anything. The channel is not closed.
+     *
+     * @param channel The program text (UTF-8), one numbered line per line.
+     * @return The program lines.
+     * @throws IOException           If the text cannot be read.
+     * @throws NumberFormatException If a line number is invalid.
+     */
+    public ProgramStore readProgram(ReadableByteChannel channel) throws IOException {
+        return ProgramStore.read(channel);
+    }
+
+    /**
+     * Check the program lines and print every error found, without running them.
+     *
+     * @param programLines The program lines to check.
+     * @return true if the program has no errors.
+     */
+    public boolean checkProgram(ProgramStore programLines) {
+        List<String> errors = Program.check(programLines);
+        for (String error : errors) {
+            System.out.println("BASIC> ERROR: " + error);
+        }
+        return errors.isEmpty();
+    }
+
+    /**
+     * Run the program lines in sequence, reading INPUT values from stdin.
+     *
+     * @param programLines The program lines to execute.
+     */
+    public void runProgram(ProgramStore programLines) {
+        runProgram(programLines, (NumberReader) null);
+    }
+
     /**
      * Run the program lines in sequence.
      *
      * @param programLines The program lines to execute.
+     * @param inputFile    File with the values for INPUT, or null to read them from stdin.
      */
-    public void runProgram(TreeMap<Integer, String> programLines) {
+    public void runProgram(ProgramStore programLines, File inputFile) {
+        if (inputFile == null) {
+            runProgram(programLines, (NumberReader) null); // Stdin is only opened if the program uses INPUT
+            return;
+        }
+
+        NumberReader input;
+        try {
+            input = NumberReader.open(inputFile);
+        } catch (IOException e) {
+            System.out.println("BASIC> ERROR WHILE OPENING INPUT FILE.");
+            return;
+        }
+        try {
+            runProgram(programLines, input);
+        } finally {
+            try {
+                input.close();
+            } catch (IOException e) {
+                System.out.println("BASIC> ERROR WHILE CLOSING INPUT FILE.");
+            }
+        }
+    }
+
+    /**
+     * Run the program lines in sequence.
+     *
+     * @param programLines The program lines to execute.
+     * @param input        Source of the values for INPUT, or null to read them from stdin. It is not closed.
+     */
+    public void runProgram(ProgramStore programLines, NumberReader input) {
         if (programLines.isEmpty()) {
-            System.out.println("BASIC> NO PROGRAM TO RUN.");
+            // Without the REPL around it, stdout carries only the program's own output
+            (verbose ? System.out : System.err).println("BASIC> NO PROGRAM TO RUN.");
             return;
         }
 
-        System.out.println("BASIC> RUNNING PROGRAM...");
+        // Lex and check every line, and resolve jumps and loops, before anything runs
+        Program program = Program.compile(programLines);
+        Checkpoint.State state = resume ? loadCheckpoint(program) : null;
+
+        // Program output goes through a buffered pipeline; anything already printed must come first
+        System.out.flush();
+        OutputPipeline output = new OutputPipeline(outputChannel, flushThreshold, flushIntervalMillis);
+        Parser.output = output;
+        Parser.input = input;
+        Parser.verbose = verbose;
+        Parser.inputPrompt = inputPrompt;
+        try {
+            execute(program, output, state);
+        } finally {
+            Parser.symbolTable.clear(); //remove the variables.
+            Parser.dataValues = new double[0];
+            Parser.dataPointer = 0;
+            output.close(); // Program end: flush everything before returning to the prompt
+            Parser.output = null;
+            Parser.input = null;
+            Parser.returnStack = new int[0];
+        }
+    }
+
+    private Checkpoint.State loadCheckpoint(Program program) {
+        if (checkpointFile == null) {
+            return null;
+        }
+        try {
+            // Both checks come first: a checkpoint of another program must leave the output alone
+            Checkpoint.State state = Checkpoint.load(checkpointFile, program);
+            if (state != null) {
+                Checkpoint.check(state, program);
+            }
+            // Drop output printed after the snapshot, it will be printed again. Without a valid snapshot
+            // (no file, or only a torn record) the run starts over, so all earlier output goes.
+            long keep = state != null ? state.outputOffset : 0;
+            if (outputChannel != OutputPipeline.STDOUT && outputChannel instanceof SeekableByteChannel) {
+                SeekableByteChannel channel = (SeekableByteChannel) outputChannel;
+                channel.truncate(keep);
+                channel.position(Math.min(channel.size(), keep));
+            }
+            return state;
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot resume from checkpoint: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Execute the compiled program, writing all messages to the given output.
+     *
+     * @param state Checkpointed state to continue from, or null to start at the first line.
+     */
+    private void execute(Program program, OutputPipeline output, Checkpoint.State state) {
+        if (verbose) {
+            output.println(state == null ? "BASIC> RUNNING PROGRAM..." : "BASIC> RESUMING PROGRAM...");
+        }
+
+        // Collect DATA values up front so READ can use them from any line
+        double[] data = new double[0];
+        for (int i = 0; i < program.size(); i++) {
+            if (program.tokens.get(i).get(0).type == TokenType.DATA) {
+                double[] values = new Parser(program, i).parseDataValues();
+                data = Arrays.copyOf(data, data.length + values.length);
+                System.arraycopy(values, 0, data, data.length - values.length, values.length);
+            }
+        }
+        Parser.dataValues = data;
+        Parser.dataPointer = 0;
+        Parser.returnStack = new int[maxGosubDepth];
+        Parser.returnDepth = 0;
 
-        // Create line number mapping for GOTO
-        Map<Integer, Integer> lineMapping = new HashMap<>();
         int index = 0;
-        for (int lineNum : programLines.keySet()) {
-            lineMapping.put(lineNum, index++);
-        }
-
-        Integer currentLine = programLines.firstKey();
-        while (currentLine != -1 && programLines.containsKey(currentLine)) {
-            String code = programLines.get(currentLine);
-            System.out.println("Executing line " + currentLine + ": " + code);
-
-            Lexer lexer = new Lexer(code);
-            List<Token> tokens = lexer.scanTokens();
-            Parser parser = new Parser(tokens, lineMapping, currentLine);
-
-            int nextLine = parser.parse();
-            if (nextLine != -1) {
-                currentLine = nextLine;  // GOTO or IF THEN jump
-            } else {
-                currentLine = programLines.higherKey(currentLine);  // Next line
-                if (currentLine == null) {
-                    break;
+        if (state != null) {
+            Checkpoint.restore(state, program, Parser.symbolTable);
+            Parser.dataPointer = state.dataPointer;
+            if (state.returnStack.length > maxGosubDepth) {
+                throw new RuntimeException("GOSUB stack overflow (depth " + maxGosubDepth + ")");
+            }
+            System.arraycopy(state.returnStack, 0, Parser.returnStack, 0, state.returnStack.length);
+            Parser.returnDepth = state.returnStack.length;
+            if (state.inputOffset > 0) {
+                if (Parser.input == null) {
+                    Parser.input = NumberReader.stdin();
                 }
+                Parser.input.skip(state.inputOffset);
             }
+            index = state.next;
         }
 
-        Parser.symbolTable.clear(); //remove the variables.
+        TraceJit jit = jitEnabled ? new TraceJit(program, Parser.symbolTable, output, verbose) : null;
+        Checkpoint checkpoint = checkpointFile != null
+                ? new Checkpoint(checkpointFile, program, output, state != null ? state.outputOffset : 0) : null;
+        long nextCheckpoint = System.nanoTime() + checkpointIntervalMillis * 1_000_000;
+        int poll = CHECKPOINT_POLL;
+        boolean completed = false;
+        try {
+            while (index < program.size()) {
+                // Snapshots are taken between statements, where the state is consistent
+                if (checkpoint != null && --poll == 0) {
+                    poll = CHECKPOINT_POLL;
+                    if (System.nanoTime() - nextCheckpoint >= 0) {
+                        checkpoint.capture(index, Parser.symbolTable, Parser.returnStack, Parser.returnDepth,
+                                Parser.dataPointer, Parser.input);
+                        nextCheckpoint = System.nanoTime() + checkpointIntervalMillis * 1_000_000;
+                    }
+                }
+                TraceJit.Trace trace = jit != null ? jit.traceAt(index) : null;
+                if (trace != null) {
+                    // Hot loop: run one compiled iteration, a failed guard hands back the line to continue at
+                    index = trace.run(Parser.symbolTable);
+                    if (index == Parser.HALT) {
+                        break;
+                    }
+                    continue;
+                }
+
+                if (verbose) {
+                    output.print("Executing line ").print(program.lineNumbers[index]).print(": ").println(program.code[index]);
+                }
+
+                Parser parser = new Parser(program, index);
+                int next = parser.parse();
+                if (next == -1) {
+                    next = index + 1;  // Next line
+                }
+                if (jit != null) {
+                    jit.afterStatement(index, next);
+                }
+                if (next == Parser.HALT) {
+                    break; // INPUT reached the end of its data, or a jump left the program
+                }
+                index = next;  // Next line, or a GOTO, GOSUB, RETURN or IF THEN jump
+            }
+            completed = true;
+        } finally {
+            if (checkpoint != null) {
+                checkpoint.close(completed);
+            }
+        }
 
-        System.out.println("BASIC> PROGRAM EXECUTION COMPLETE.");
+        if (verbose) {
+            output.println("BASIC> PROGRAM EXECUTION COMPLETE.");
+        }
     }
 }
\ No newline at end of file
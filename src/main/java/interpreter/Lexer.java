@@ -1,8 +1,6 @@
 package interpreter;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 public class Lexer {
     private final String source;
@@ -11,24 +9,6 @@ public class Lexer {
     private int current = 0;
     private int line = 1;
 
-    // Keywords map for BASIC
-    private static final Map<String, TokenType> keywords;
-    static {
-        keywords = new HashMap<>();
-        keywords.put("LET", TokenType.LET);
-        keywords.put("PRINT", TokenType.PRINT);
-        keywords.put("INPUT", TokenType.INPUT);
-        keywords.put("IF", TokenType.IF);
-        keywords.put("THEN", TokenType.THEN);
-        keywords.put("ELSE", TokenType.ELSE);
-        keywords.put("ENDIF", TokenType.ENDIF);
-        keywords.put("WHILE", TokenType.WHILE);
-        keywords.put("WEND", TokenType.WEND);
-        keywords.put("END", TokenType.END);
-        keywords.put("REM", TokenType.REM);
-        keywords.put("GOTO", TokenType.GOTO);
-    }
-
     public Lexer(String source) {
         this.source = source;
     }
@@ -49,6 +29,7 @@ public class Lexer {
             // Single character tokens
             case '(': addToken(TokenType.LEFT_PAREN); break;
             case ')': addToken(TokenType.RIGHT_PAREN); break;
+            case ',': addToken(TokenType.COMMA); break;
             case '+': addToken(TokenType.PLUS); break;
             case '-': addToken(TokenType.MINUS); break;
             case '*': addToken(TokenType.MULTIPLY); break;
@@ -94,12 +75,48 @@ public class Lexer {
     private void identifier() {
         while (isAlphaNumeric(peek())) advance();
 
-        String text = source.substring(start, current);
-        TokenType type = keywords.get(text.toUpperCase());
+        TokenType type = keywordType();
         if (type == null) type = TokenType.IDENTIFIER;
         addToken(type);
     }
 
+    // Keywords of BASIC, matched in place so no table is built at class-load time
+    private TokenType keywordType() {
+        switch (current - start) {
+            case 2:
+                if (isKeyword("IF")) return TokenType.IF;
+                break;
+            case 3:
+                if (isKeyword("LET")) return TokenType.LET;
+                if (isKeyword("END")) return TokenType.END;
+                if (isKeyword("REM")) return TokenType.REM;
+                break;
+            case 4:
+                if (isKeyword("THEN")) return TokenType.THEN;
+                if (isKeyword("ELSE")) return TokenType.ELSE;
+                if (isKeyword("GOTO")) return TokenType.GOTO;
+                if (isKeyword("WEND")) return TokenType.WEND;
+                if (isKeyword("READ")) return TokenType.READ;
+                if (isKeyword("DATA")) return TokenType.DATA;
+                break;
+            case 5:
+                if (isKeyword("PRINT")) return TokenType.PRINT;
+                if (isKeyword("INPUT")) return TokenType.INPUT;
+                if (isKeyword("ENDIF")) return TokenType.ENDIF;
+                if (isKeyword("WHILE")) return TokenType.WHILE;
+                if (isKeyword("GOSUB")) return TokenType.GOSUB;
+                break;
+            case 6:
+                if (isKeyword("RETURN")) return TokenType.RETURN;
+                break;
+        }
+        return null;
+    }
+
+    private boolean isKeyword(String keyword) {
+        return source.regionMatches(true, start, keyword, 0, keyword.length());
+    }
+
     private void number() {
         while (isDigit(peek())) advance();
 
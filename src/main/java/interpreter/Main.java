@@ -1,19 +1,19 @@
 package interpreter;
 
 import java.io.File;
-import java.util.Scanner;
-import java.util.TreeMap;
 
 /**
  * Main class to handle user input and manage the BASIC interpreter.
  */
 public class Main {
-    static TreeMap<Integer, String> programLines = new TreeMap<>(); // Stores program lines with line numbers
+    static ProgramStore programLines = new ProgramStore(); // Stores program lines with line numbers
     private static Interpreter interpreter = new Interpreter(); // Interpreter instance for executing commands
     private static final String SAVES_DIRECTORY = "saves"; // Directory for saving program files
 
     public static void main(String[] args) {
-        Scanner scanner = new Scanner(System.in); // Scanner for user input
+        // Commands, SAVE and DELETE answers and INPUT values all come from this one stdin reader
+        NumberReader stdin = NumberReader.stdin();
+        interpreter.setInputPrompt("? ");
 
         // Welcome message
         System.out.println("*****************************************");
@@ -27,7 +27,15 @@ public class Main {
             System.out.print("BASIC> "); // Prompt for input
 
             // Read user input and remove leading/trailing spaces
-            String input = scanner.nextLine().replaceFirst("^\\s+", "");
+            String line = stdin.nextLine();
+            if (line == null) {
+                System.out.println();
+                break; // End of input
+            }
+            String input = line.replaceFirst("^\\s+", "");
+            if (input.isEmpty()) {
+                continue; // E.g. the rest of a line of INPUT values
+            }
 
             // Handle commands
             if (input.equalsIgnoreCase("END")) {
@@ -36,7 +44,9 @@ public class Main {
             } else if (input.equalsIgnoreCase("LIST")) {
                 listProgram(); // Display program lines
             } else if (input.equalsIgnoreCase("RUN")) {
-                interpreter.runProgram(programLines); // Execute the program
+                runProgram(null); // Execute the program
+            } else if (input.toUpperCase().startsWith("RUN ")) {
+                runWithInput(input); // Execute the program with INPUT read from a file
             } else if (input.equalsIgnoreCase("SAVE")) {
                 interpreter.saveProgram(programLines); // Save the current program
             } else if (input.startsWith("LOAD")) {
@@ -47,8 +57,6 @@ public class Main {
                 processInputLine(input); // Handle input as a program line
             }
         }
-
-        scanner.close(); // Close the scanner to release resources
     }
 
     /**
@@ -79,6 +87,29 @@ public class Main {
         }
     }
 
+    /**
+     * Run the program with INPUT values taken from a file: RUN [file].
+     */
+    private static void runWithInput(String input) {
+        File inputFile = new File(input.substring(4).trim());
+        if (!inputFile.isFile()) {
+            System.out.println("BASIC> NO INPUT FILE FOUND: " + inputFile.getPath());
+            return;
+        }
+        runProgram(inputFile);
+    }
+
+    /**
+     * Run the program, reporting errors instead of leaving the REPL.
+     */
+    private static void runProgram(File inputFile) {
+        try {
+            interpreter.runProgram(programLines, inputFile);
+        } catch (RuntimeException e) {
+            System.out.println("BASIC> ERROR: " + e.getMessage());
+        }
+    }
+
     /**
      * Display the current program lines in numerical order.
      */
@@ -87,9 +118,9 @@ public class Main {
             System.out.println("BASIC> NO PROGRAM LINES TO LIST.");
         } else {
             System.out.println("BASIC> Current Program:");
-            programLines.forEach((lineNumber, code) ->
-                    System.out.println("  " + lineNumber + " " + code)
-            );
+            for (int i = 0; i < programLines.size(); i++) {
+                System.out.println("  " + programLines.lineNumber(i) + " " + programLines.code(i));
+            }
         }
     }
 
@@ -132,6 +163,7 @@ public class Main {
             if (programFile.exists()) {
                 programLines = interpreter.loadProgram(programFile); // Load the program into memory
                 System.out.println("BASIC> Program loaded from " + filename);
+                interpreter.checkProgram(programLines); // Report errors now rather than at RUN
             } else {
                 System.out.println("BASIC> NO PROGRAM FOUND WITH NAME: " + parts[1]);
             }
@@ -164,9 +196,9 @@ public class Main {
 
         // Ask user to select a program to delete
         System.out.println("BASIC> ENTER THE NUMBER OF THE PROGRAM TO DELETE:");
-        Scanner scanner = new Scanner(System.in);
         try {
-            int choice = Integer.parseInt(scanner.nextLine().trim());
+            String line = NumberReader.stdin().nextLine();
+            int choice = Integer.parseInt(line == null ? "" : line.trim());
             if (choice < 1 || choice > files.length) {
                 System.out.println("BASIC> INVALID CHOICE.");
                 return;
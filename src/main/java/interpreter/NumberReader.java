@@ -0,0 +1,320 @@
+package interpreter;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Streaming reader for the numbers consumed by INPUT.
+ * Files are memory-mapped window by window, other sources (stdin, pipes) are read
+ * through a large direct buffer. Numbers are parsed straight from the bytes, so no
+ * String is created per value. Numbers may be separated by whitespace, commas or semicolons.
+ */
+public class NumberReader implements AutoCloseable {
+    static final int BUFFER_SIZE = 1 << 20; // Read buffer for streams (1 MB)
+    static final long MAP_WINDOW = 1L << 28; // Mapped window for files (256 MB)
+
+    // Powers of ten that are exact doubles, used by the fast path
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final int MAX_EXACT_DIGITS = 15; // Digits that always fit a double mantissa exactly
+
+    private final ReadableByteChannel stream; // Null when the source is mapped or in memory
+    private final FileChannel file; // Null when the source is a stream or in memory
+    private final boolean closeSource;
+    private ByteBuffer buffer;
+    private long mappedUpTo = 0; // File offset where the next window starts
+    private long bufferStart = 0; // Input offset of the first byte in buffer
+
+    // Text of the current number, kept only for the rare slow path
+    private char[] scratch = new char[64];
+    private int scratchLength;
+
+    private NumberReader(ReadableByteChannel stream, FileChannel file, boolean closeSource) {
+        this.stream = stream;
+        this.file = file;
+        this.closeSource = closeSource;
+        if (stream != null) {
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.flip(); // Start empty
+        } else {
+            buffer = ByteBuffer.allocate(0);
+        }
+    }
+
+    /**
+     * Open a reader over a file using memory-mapped windows.
+     *
+     * @param source The file with the input numbers.
+     * @return The reader.
+     */
+    public static NumberReader open(File source) throws IOException {
+        return new NumberReader(null, FileChannel.open(source.toPath(), StandardOpenOption.READ), true);
+    }
+
+    private static NumberReader stdin; // Shared so buffered input survives between runs
+
+    /**
+     * Get the reader over the process stdin. Closing it leaves stdin open.
+     */
+    public static synchronized NumberReader stdin() {
+        if (stdin == null) {
+            stdin = new NumberReader(new FileInputStream(FileDescriptor.in).getChannel(), null, false);
+        }
+        return stdin;
+    }
+
+    /**
+     * Create a reader over any channel, e.g. a pipe. The channel is closed with the reader.
+     */
+    public static NumberReader of(ReadableByteChannel channel) {
+        return new NumberReader(channel, null, true);
+    }
+
+    /**
+     * Create a reader over bytes already in memory.
+     */
+    public static NumberReader of(byte[] data) {
+        NumberReader reader = new NumberReader(null, null, false);
+        reader.buffer = ByteBuffer.wrap(data);
+        return reader;
+    }
+
+    /**
+     * Skip separators and report whether another number follows.
+     *
+     * @return false when the input is exhausted.
+     */
+    public boolean hasNext() {
+        while (true) {
+            int b = peek();
+            if (b == -1) {
+                return false;
+            }
+            if (b == ' ' || b == ',' || b == ';' || b == '\n' || b == '\r' || b == '\t') {
+                buffer.get();
+            } else {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Parse the next number. Call hasNext() first to detect the end of the input.
+     *
+     * @return The parsed value.
+     */
+    public double nextDouble() {
+        if (!hasNext()) {
+            throw new RuntimeException("No more input.");
+        }
+        scratchLength = 0;
+
+        boolean negative = false;
+        int b = peek();
+        if (b == '-' || b == '+') {
+            negative = b == '-';
+            take();
+        }
+
+        long mantissa = 0;
+        int digits = 0; // Significant digits kept in mantissa
+        int exponent = 0; // Decimal exponent applied to mantissa
+        boolean sawDigit = false;
+
+        // Integer part
+        while (isDigit(b = peek())) {
+            take();
+            sawDigit = true;
+            if (digits < 18) {
+                if (mantissa != 0 || b != '0') {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (mantissa != 0) digits++;
+                }
+            } else {
+                exponent++; // Digit does not fit, keep its magnitude
+                digits++;
+            }
+        }
+
+        // Fraction part
+        if (b == '.') {
+            take();
+            while (isDigit(b = peek())) {
+                take();
+                sawDigit = true;
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (mantissa != 0) digits++;
+                    exponent--;
+                } else {
+                    digits++;
+                }
+            }
+        }
+
+        if (!sawDigit) {
+            throw new RuntimeException("Invalid number in input near '" + (char) peek() + "'.");
+        }
+
+        // Exponent part
+        if (b == 'e' || b == 'E') {
+            take();
+            boolean negativeExponent = false;
+            b = peek();
+            if (b == '-' || b == '+') {
+                negativeExponent = b == '-';
+                take();
+            }
+            int value = 0;
+            boolean sawExponentDigit = false;
+            while (isDigit(b = peek())) {
+                take();
+                sawExponentDigit = true;
+                if (value < 100000) value = value * 10 + (b - '0');
+            }
+            if (!sawExponentDigit) {
+                throw new RuntimeException("Invalid exponent in input.");
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+
+        double result;
+        if (mantissa == 0) {
+            result = 0.0;
+        } else if (digits <= MAX_EXACT_DIGITS && exponent >= -22 && exponent <= 22) {
+            // Mantissa and power of ten are both exact, so one rounding gives the correct result
+            result = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+        } else {
+            // Too many digits for the fast path: let the JDK do the exact conversion
+            return Double.parseDouble(new String(scratch, 0, scratchLength));
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * Read the rest of the current line, e.g. a command typed at the prompt.
+     * The REPL reads its commands through the same stdin reader as INPUT, so neither
+     * loses bytes the other has buffered.
+     *
+     * @return The line without its line terminator, or null at the end of the input.
+     */
+    public String nextLine() {
+        if (peek() == -1) {
+            return null;
+        }
+        byte[] line = new byte[128];
+        int length = 0;
+        int b;
+        while ((b = peek()) != -1) {
+            buffer.get();
+            if (b == '\n') {
+                break;
+            }
+            if (length == line.length) {
+                line = Arrays.copyOf(line, line.length * 2);
+            }
+            line[length++] = (byte) b;
+        }
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        return new String(line, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return Number of input bytes consumed so far.
+     */
+    public long position() {
+        return bufferStart + buffer.position();
+    }
+
+    /**
+     * Skip input bytes, e.g. to continue where a checkpointed run stopped.
+     *
+     * @param bytes Number of bytes to skip.
+     */
+    public void skip(long bytes) {
+        while (bytes > 0) {
+            if (!buffer.hasRemaining() && !refill()) {
+                return; // Input is shorter than that
+            }
+            int step = (int) Math.min(bytes, buffer.remaining());
+            buffer.position(buffer.position() + step);
+            bytes -= step;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closeSource) {
+            return;
+        }
+        if (stream != null) {
+            stream.close();
+        }
+        if (file != null) {
+            file.close();
+        }
+    }
+
+    private static boolean isDigit(int b) {
+        return b >= '0' && b <= '9';
+    }
+
+    // Consume the current byte and remember it for the slow path
+    private void take() {
+        byte b = buffer.get();
+        if (scratchLength == scratch.length) {
+            scratch = Arrays.copyOf(scratch, scratch.length * 2);
+        }
+        scratch[scratchLength++] = (char) b;
+    }
+
+    private int peek() {
+        if (!buffer.hasRemaining() && !refill()) {
+            return -1;
+        }
+        return buffer.get(buffer.position()) & 0xFF;
+    }
+
+    private boolean refill() {
+        try {
+            if (file != null) {
+                long size = file.size();
+                if (mappedUpTo >= size) {
+                    return false;
+                }
+                long length = Math.min(MAP_WINDOW, size - mappedUpTo);
+                MappedByteBuffer window = file.map(FileChannel.MapMode.READ_ONLY, mappedUpTo, length);
+                bufferStart = mappedUpTo;
+                mappedUpTo += length;
+                buffer = window;
+                return true;
+            }
+            if (stream == null) {
+                return false; // In-memory data has no more bytes
+            }
+            bufferStart += buffer.limit();
+            buffer.clear();
+            int read;
+            do {
+                read = stream.read(buffer);
+            } while (read == 0);
+            buffer.flip();
+            return read > 0;
+        } catch (IOException e) {
+            throw new RuntimeException("Error while reading input: " + e.getMessage(), e);
+        }
+    }
+}
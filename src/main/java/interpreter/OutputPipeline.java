@@ -0,0 +1,375 @@
+package interpreter;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Buffered output used while a program is running.
+ * Text is encoded into a bounded ring buffer and written to an NIO channel by a
+ * dedicated writer thread, so PRINT never waits on the console or a pipe.
+ * The writer drains the buffer when one of the flush policies triggers:
+ * - SIZE: at least flushThreshold bytes are waiting.
+ * - TIME: data has been waiting for flushIntervalMillis.
+ * - END: flush() or close() is called (done by the interpreter when the program ends).
+ * When the ring is full the producer blocks until the writer catches up (backpressure).
+ * Bytes are always written in the order they were printed.
+ */
+public class OutputPipeline implements AutoCloseable {
+    static final int DEFAULT_CAPACITY = 64 * 1024; // Size of the ring buffer in bytes
+    static final int DEFAULT_FLUSH_THRESHOLD = 8 * 1024; // SIZE policy threshold in bytes
+    static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 50; // TIME policy interval
+    static final int MAX_FLUSH_THRESHOLD = 64 * 1024 * 1024; // Largest SIZE threshold, the ring holds two of them
+
+    // Channel over the process stdout. It is shared and never closed by a pipeline.
+    static final WritableByteChannel STDOUT = new FileOutputStream(FileDescriptor.out).getChannel();
+
+    private static final int STAGING_SIZE = 1024; // Bytes collected before publishing to the ring
+
+    private final WritableByteChannel channel;
+    private final byte[] ring;
+    private final int flushThreshold;
+    private final long flushIntervalNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition dataAvailable = lock.newCondition();
+    private final Condition spaceAvailable = lock.newCondition();
+
+    // Positions are running byte counts; the ring index is position % ring.length
+    private long head = 0; // Bytes published by the producer
+    private long tail = 0; // Bytes written to the channel
+    private long flushTarget = 0; // Position an explicit flush is waiting for
+    private boolean closed = false;
+    private IOException failure = null;
+
+    // Producer-side staging so the lock is taken once per line instead of once per byte
+    private final byte[] staging = new byte[STAGING_SIZE];
+    private int staged = 0;
+
+    private final Thread writer;
+
+    /**
+     * Create a pipeline with the default buffer size and flush policies.
+     *
+     * @param channel The channel to write to.
+     */
+    public OutputPipeline(WritableByteChannel channel) {
+        this(channel, DEFAULT_CAPACITY, DEFAULT_FLUSH_THRESHOLD, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Create a pipeline with the given flush policies and a ring buffer that holds at least two thresholds,
+     * so the producer can keep printing while one threshold's worth is being written.
+     *
+     * @param channel             The channel to write to.
+     * @param flushThreshold      Number of waiting bytes that triggers a write, at most MAX_FLUSH_THRESHOLD.
+     * @param flushIntervalMillis Longest time bytes may wait before they are written.
+     */
+    public OutputPipeline(WritableByteChannel channel, int flushThreshold, long flushIntervalMillis) {
+        this(channel, Math.max(DEFAULT_CAPACITY, 2 * Math.min(flushThreshold, MAX_FLUSH_THRESHOLD)), flushThreshold,
+                flushIntervalMillis);
+    }
+
+    /**
+     * Create a pipeline and start its writer thread.
+     *
+     * @param channel             The channel to write to.
+     * @param capacity            Ring buffer size in bytes.
+     * @param flushThreshold      Number of waiting bytes that triggers a write.
+     * @param flushIntervalMillis Longest time bytes may wait before they are written.
+     */
+    public OutputPipeline(WritableByteChannel channel, int capacity, int flushThreshold, long flushIntervalMillis) {
+        if (capacity < STAGING_SIZE) {
+            throw new IllegalArgumentException("Output buffer must hold at least " + STAGING_SIZE + " bytes.");
+        }
+        this.channel = channel;
+        this.ring = new byte[capacity];
+        this.flushThreshold = Math.max(1, Math.min(flushThreshold, capacity));
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushIntervalMillis));
+
+        writer = new Thread(this::drainLoop, "basic-output");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Append text without a line break.
+     */
+    public OutputPipeline print(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                writeCodePoint(Character.toCodePoint(c, text.charAt(++i)));
+            } else {
+                writeCodePoint(c);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Append a number without a line break, formatted by NumberFormatter straight into the staging buffer.
+     */
+    public OutputPipeline print(double value) {
+        if (staging.length - staged < NumberFormatter.MAX_LENGTH) {
+            publish();
+        }
+        int end = NumberFormatter.format(value, staging, staged);
+        if (end < 0) {
+            return print(Double.toString(value));
+        }
+        staged = end;
+        return this;
+    }
+
+    /**
+     * Append a whole number without a line break.
+     */
+    public OutputPipeline print(int value) {
+        if (staging.length - staged < NumberFormatter.MAX_LENGTH) {
+            publish();
+        }
+        staged = NumberFormatter.formatLong(value, staging, staged);
+        return this;
+    }
+
+    /**
+     * Append a number followed by a line break.
+     */
+    public OutputPipeline println(double value) {
+        print(value);
+        return println();
+    }
+
+    /**
+     * Append text followed by a line break.
+     */
+    public OutputPipeline println(CharSequence text) {
+        print(text);
+        return println();
+    }
+
+    /**
+     * Append a line break and hand the finished line to the writer thread.
+     */
+    public OutputPipeline println() {
+        writeByte((byte) '\n');
+        publish();
+        return this;
+    }
+
+    /**
+     * Block until everything printed so far has been written to the channel.
+     */
+    public void flush() {
+        publish();
+        lock.lock();
+        try {
+            flushTarget = Math.max(flushTarget, head);
+            dataAvailable.signal();
+            while (tail < flushTarget && failure == null) {
+                spaceAvailable.awaitUninterruptibly();
+            }
+            checkFailure();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Flush remaining output and stop the writer thread. The channel itself is left open.
+     */
+    @Override
+    public void close() {
+        try {
+            flush();
+        } finally {
+            lock.lock();
+            try {
+                closed = true;
+                dataAvailable.signal();
+            } finally {
+                lock.unlock();
+            }
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Hand everything printed so far to the writer thread without waiting for it to be written.
+     *
+     * @return Total number of bytes printed so far.
+     */
+    public long flushAsync() {
+        publish();
+        lock.lock();
+        try {
+            flushTarget = Math.max(flushTarget, head);
+            dataAvailable.signal();
+            return head;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Block until at least the given number of bytes has been written to the channel.
+     * Meant for threads other than the producer, e.g. to persist a checkpoint only after its output.
+     *
+     * @param position Byte count returned by flushAsync().
+     * @return false if the output failed and the bytes will never be written.
+     */
+    public boolean awaitWritten(long position) {
+        lock.lock();
+        try {
+            while (tail < position && failure == null) {
+                spaceAvailable.awaitUninterruptibly();
+            }
+            return failure == null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void writeCodePoint(int cp) {
+        // UTF-8 encoding done by hand to avoid a temporary byte[] per string
+        if (cp < 0x80) {
+            writeByte((byte) cp);
+        } else if (cp < 0x800) {
+            writeByte((byte) (0xC0 | (cp >> 6)));
+            writeByte((byte) (0x80 | (cp & 0x3F)));
+        } else if (cp < 0x10000) {
+            writeByte((byte) (0xE0 | (cp >> 12)));
+            writeByte((byte) (0x80 | ((cp >> 6) & 0x3F)));
+            writeByte((byte) (0x80 | (cp & 0x3F)));
+        } else {
+            writeByte((byte) (0xF0 | (cp >> 18)));
+            writeByte((byte) (0x80 | ((cp >> 12) & 0x3F)));
+            writeByte((byte) (0x80 | ((cp >> 6) & 0x3F)));
+            writeByte((byte) (0x80 | (cp & 0x3F)));
+        }
+    }
+
+    private void writeByte(byte b) {
+        if (staged == staging.length) {
+            publish();
+        }
+        staging[staged++] = b;
+    }
+
+    // Move the staged bytes into the ring, waiting for space if the writer is behind
+    private void publish() {
+        if (staged == 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            checkFailure();
+            if (closed) {
+                throw new IllegalStateException("Output pipeline is closed.");
+            }
+            while (ring.length - (head - tail) < staged) {
+                dataAvailable.signal(); // Make sure the writer is draining
+                spaceAvailable.awaitUninterruptibly();
+                checkFailure();
+            }
+            boolean wasEmpty = head == tail;
+            int start = (int) (head % ring.length);
+            int first = Math.min(staged, ring.length - start);
+            System.arraycopy(staging, 0, ring, start, first);
+            System.arraycopy(staging, first, ring, 0, staged - first);
+            head += staged;
+            staged = 0;
+            if (wasEmpty || head - tail >= flushThreshold) {
+                dataAvailable.signal(); // Start the TIME policy clock or trigger the SIZE policy
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new RuntimeException("Output error: " + failure.getMessage(), failure);
+        }
+    }
+
+    // Writer thread: wait for a flush policy to trigger, then copy a chunk out and write it
+    private void drainLoop() {
+        // Large enough that a whole SIZE threshold goes out in one write
+        ByteBuffer chunk = ByteBuffer.allocateDirect(Math.min(ring.length, Math.max(DEFAULT_CAPACITY, flushThreshold)));
+        long lastDrain = System.nanoTime();
+        while (true) {
+            long start;
+            int length;
+            lock.lock();
+            try {
+                while (true) {
+                    long pending = head - tail;
+                    if (pending == 0 && closed) {
+                        return;
+                    }
+                    long waited = System.nanoTime() - lastDrain;
+                    if (pending > 0 && (pending >= flushThreshold || flushTarget > tail || closed
+                            || waited >= flushIntervalNanos || ring.length - pending < STAGING_SIZE)) {
+                        break;
+                    }
+                    if (pending == 0) {
+                        dataAvailable.await();
+                        lastDrain = System.nanoTime(); // TIME policy counts from when data shows up
+                    } else {
+                        dataAvailable.awaitNanos(flushIntervalNanos - waited);
+                    }
+                }
+                start = tail;
+                length = (int) Math.min(head - tail, chunk.capacity());
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            // [tail, head) is only written by the producer after tail moves, so copying outside the lock is safe
+            chunk.clear();
+            int from = (int) (start % ring.length);
+            int first = Math.min(length, ring.length - from);
+            chunk.put(ring, from, first);
+            chunk.put(ring, 0, length - first);
+            chunk.flip();
+            IOException error = null;
+            try {
+                while (chunk.hasRemaining()) {
+                    channel.write(chunk);
+                }
+            } catch (IOException e) {
+                error = e;
+            }
+            lastDrain = System.nanoTime();
+
+            lock.lock();
+            try {
+                if (error != null) {
+                    failure = error;
+                    tail = head; // Drop the rest, producers will see the failure
+                } else {
+                    tail += length;
+                }
+                spaceAvailable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (error != null) {
+                return;
+            }
+        }
+    }
+}
@@ -1,29 +1,37 @@
 package interpreter;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.ArrayList;
-
-import static interpreter.Main.programLines;
+import java.util.Arrays;
 
 public class Parser {
     private final List<Token> tokens;
     private int current = 0;
-    static Map<String, Object> symbolTable = new HashMap<>();
-    private Map<Integer, Integer> lineNumbers = new HashMap<>();
-    // Fields for WHILE loop support
-    private static boolean inWhileLoop = false;
-    private static int whileLineNumber = -1;
-    private final int currentLine;
-
-
-    public Parser(List<Token> tokens, Map<Integer, Integer> lineNumbers, int currentLine) {
-        this.tokens = tokens;
-        this.lineNumbers = lineNumbers;
-        this.currentLine = currentLine;
+    static SymbolTable symbolTable = new SymbolTable();
+    static OutputPipeline output; // Buffered output for the running program, set by the interpreter
+    static NumberReader input; // Source of INPUT values, stdin is opened on first use
+    static boolean verbose = true; // Print a message for every assignment
+    static String inputPrompt; // Printed before INPUT reads from stdin, null for none
+    static double[] dataValues = new double[0]; // Values of all DATA statements in program order
+    static int dataPointer = 0; // Index of the next DATA value for READ
+    static final int HALT = -2; // Returned by parse() when the program must stop
+    // GOSUB return stack: statement indices to continue at, preallocated by the interpreter
+    static int[] returnStack = new int[0];
+    static int returnDepth = 0;
+    private final Program program;
+    private final int index; // Index of the statement being executed
+
+
+    public Parser(Program program, int index) {
+        this.tokens = program.tokens.get(index);
+        this.program = program;
+        this.index = index;
     }
 
-    // Method to parse the whole program
+    /**
+     * Execute the statement.
+     *
+     * @return The index of the statement to run next, -1 to continue with the next one, or HALT.
+     */
     public int parse() {
         while (!isAtEnd()) {
             Token token = advance();
@@ -35,10 +43,23 @@ public class Parser {
                 case PRINT:
                     parsePrintStatement();
                     break;
+                case INPUT:
+                    return parseInputStatement();
+                case READ:
+                    parseReadStatement();
+                    break;
+                case DATA:
+                    // DATA values are collected before the program runs
+                    current = tokens.size() - 1;
+                    break;
                 case IF:
                     return parseIfStatement();
                 case GOTO:
                     return parseGotoStatement();
+                case GOSUB:
+                    return parseGosubStatement();
+                case RETURN:
+                    return parseReturnStatement();
                 case WHILE:
                     return parseWhileStatement();
                 case WEND:
@@ -50,11 +71,6 @@ public class Parser {
                 default:
                     throw new RuntimeException("Unexpected token: " + token.type);
             }
-
-            // Check while loop condition if we're in one
-            if (inWhileLoop && current >= tokens.size()) {
-                return evaluateWhileLoop();
-            }
         }
 
         return -1;
@@ -98,8 +114,10 @@ public class Parser {
         }
 
         // Store the final result in the symbol table
-        symbolTable.put(identifier.lexeme, result);
-        System.out.println("LET statement: " + identifier.lexeme + " = " + result);
+        symbolTable.set(symbolTable.slot(identifier.lexeme), result);
+        if (verbose) {
+            output.print("LET statement: ").print(identifier.lexeme).print(" = ").println(result);
+        }
     }
 
     // Parse a PRINT statement
@@ -108,95 +126,138 @@ public class Parser {
 
         if (expression.type == TokenType.STRING) {
             // If it's a string, print it
-            System.out.println(expression.lexeme.substring(1, expression.lexeme.length() - 1));
+            output.println(expression.lexeme.substring(1, expression.lexeme.length() - 1));
         } else if (expression.type == TokenType.IDENTIFIER) {
             // If it's an identifier (variable), print its value from the symbol table
-            Object value = symbolTable.get(expression.lexeme);
-            if (value != null) {
-                System.out.println(value);
+            int slot = symbolTable.slot(expression.lexeme);
+            if (symbolTable.isDefined(slot)) {
+                output.println(symbolTable.get(slot));
             } else {
-                System.out.println("Undefined variable: " + expression.lexeme);
+                output.println("Undefined variable: " + expression.lexeme);
             }
         } else {
             throw new RuntimeException("Expect expression to print (string or variable).");
         }
     }
 
+    // Parse an INPUT statement: INPUT a, b, ...
+    private int parseInputStatement() {
+        if (input == null) {
+            input = NumberReader.stdin();
+        }
+        if (inputPrompt != null && input == NumberReader.stdin()) {
+            output.print(inputPrompt);
+            output.flush(); // Show the prompt before waiting for the user
+        }
+        do {
+            Token identifier = consume(TokenType.IDENTIFIER, "Expect variable name after INPUT.");
+            if (!input.hasNext()) {
+                return HALT; // End of input ends the program
+            }
+            symbolTable.set(symbolTable.slot(identifier.lexeme), input.nextDouble());
+        } while (match(TokenType.COMMA));
+
+        return -1;
+    }
+
+    // Parse a READ statement: READ a, b, ...
+    private void parseReadStatement() {
+        do {
+            Token identifier = consume(TokenType.IDENTIFIER, "Expect variable name after READ.");
+            if (dataPointer >= dataValues.length) {
+                throw new RuntimeException("Out of DATA.");
+            }
+            symbolTable.set(symbolTable.slot(identifier.lexeme), dataValues[dataPointer++]);
+        } while (match(TokenType.COMMA));
+    }
+
+    /**
+     * Parse the values of a DATA statement: DATA 1, -2.5, ...
+     * Called by the interpreter before the program runs.
+     *
+     * @return The values in the order they appear.
+     */
+    double[] parseDataValues() {
+        consume(TokenType.DATA, "Expect DATA.");
+        double[] values = new double[tokens.size()];
+        int count = 0;
+        do {
+            boolean negative = match(TokenType.MINUS);
+            Token number = consume(TokenType.NUMBER, "Expect number in DATA statement.");
+            double value = (double) number.literal;
+            values[count++] = negative ? -value : value;
+        } while (match(TokenType.COMMA));
+
+        if (!isAtEnd()) {
+            throw new RuntimeException("Unexpected token in DATA statement: " + peek().type);
+        }
+        return Arrays.copyOf(values, count);
+    }
+
     private int parseIfStatement() {
         double left = parseValue();
 
-        // Get comparison operator
+        // Get comparison operator, checked by the Analyzer
         Token operator = advance();
-        if (!isComparisonOperator(operator.type)) {
-            throw new RuntimeException("Expected comparison operator.");
-        }
 
         double right = parseValue();
 
         // Evaluate condition
         boolean condition = evaluateCondition(left, operator.type, right);
 
-        consume(TokenType.THEN, "Expected THEN after condition.");
-        Token gotoLine = advance();
-        int targetLine = Integer.parseInt(gotoLine.lexeme);
+        // THEN and the target line were checked and resolved by the Analyzer
+        current += 2;
 
         if (condition) {
-            return targetLine;
+            return program.jumpTargets[index];
         }
 
         return -1;
     }
 
     private int parseGotoStatement() {
-        Token lineToken = advance();
-        if (lineToken.type != TokenType.NUMBER) {
-            throw new RuntimeException("Expected line number after GOTO");
-        }
+        advance(); // Target line, checked and resolved by the Analyzer
+        return program.jumpTargets[index];
+    }
 
-        int targetLine = ((Double) lineToken.literal).intValue();
-        if (!lineNumbers.containsKey(targetLine)) {
-            throw new RuntimeException("Invalid GOTO line number: " + targetLine);
+    private int parseGosubStatement() {
+        advance(); // Target line, checked and resolved by the Analyzer
+        if (returnDepth == returnStack.length) {
+            throw new RuntimeException("GOSUB stack overflow (depth " + returnStack.length + ")");
         }
+        returnStack[returnDepth++] = index + 1;
+        return program.jumpTargets[index];
+    }
 
-        return targetLine;
+    private int parseReturnStatement() {
+        if (returnDepth == 0) {
+            throw new RuntimeException("RETURN without GOSUB");
+        }
+        int returnIndex = returnStack[--returnDepth];
+        // GOSUB on the last line returns past the end of the program
+        return returnIndex < program.size() ? returnIndex : HALT;
     }
 
     // Add WHILE loop support
     private int parseWhileStatement() {
-        // Only set inWhileLoop if we're not already in the loop
-        if (!inWhileLoop) {
-            whileLineNumber = getCurrentLineNumber();
-            inWhileLoop = true;
-        }
-
         // Parse condition
         double left = parseValue();
         Token operator = advance();
-        if (!isComparisonOperator(operator.type)) {
-            throw new RuntimeException("Expected comparison operator in WHILE statement");
-        }
         double right = parseValue();
 
         // Evaluate condition
         boolean condition = evaluateCondition(left, operator.type, right);
         if (!condition) {
-            // Reset while loop state
-            inWhileLoop = false;
-            whileLineNumber = -1;
-            // Find and skip to after WEND
-            int wendLine = findWendLine();
-            Integer nextLine = programLines.higherKey(wendLine);
-            return (nextLine != null) ? nextLine : -1;
+            // Skip to after the matching WEND, paired by the Analyzer
+            int nextIndex = program.loopPartners[index] + 1;
+            return nextIndex < program.size() ? nextIndex : HALT;
         }
 
         return -1; // Continue to next line
     }
 
     private int handleWend() {
-        if (!inWhileLoop) {
-            throw new RuntimeException("WEND without WHILE");
-        }
-        return whileLineNumber; // Return to WHILE line for reevaluation
+        return program.loopPartners[index]; // Return to WHILE line for reevaluation
     }
 
     // Method to handle variable assignment without LET keyword
@@ -235,72 +296,23 @@ public class Parser {
             }
         }
 
-        symbolTable.put(identifier.lexeme, result);
-        System.out.println("Assignment: " + identifier.lexeme + " = " + result);
-    }
-
-    // Helper methods
-    private int evaluateWhileLoop() {
-        // Re-evaluate the while condition
-        current = 0; // Reset position to start of tokens
-        Token token = advance();
-        if (token.type != TokenType.WHILE) {
-            throw new RuntimeException("Expected WHILE statement");
-        }
-
-        double left = parseValue();
-        Token operator = advance();
-        double right = parseValue();
-
-        boolean condition = evaluateCondition(left, operator.type, right);
-        if (!condition) {
-            inWhileLoop = false;
-            whileLineNumber = -1;
-            return findWendLine();
-        }
-
-        return -1; // Continue execution
-    }
-
-    private int findWendLine() {
-        // Get the next line after current WHILE
-        Integer nextLine = getCurrentLineNumber();
-
-        // Search through program lines until we find WEND
-        while (nextLine != null) {
-            String code = programLines.get(nextLine);
-            Lexer tempLexer = new Lexer(code);
-            List<Token> tempTokens = tempLexer.scanTokens();
-
-            if (!tempTokens.isEmpty() && tempTokens.get(0).type == TokenType.WEND) {
-                return nextLine;
-            }
-
-            nextLine = programLines.higherKey(nextLine);
-        }
-        throw new RuntimeException("WEND not found for WHILE statement");
-    }
-
-    private int getCurrentLineNumber() {
-        // Get current line number based on position in program
-        for (Map.Entry<Integer, Integer> entry : lineNumbers.entrySet()) {
-            if (entry.getValue() == currentLine) {
-                return entry.getKey();
-            }
+        symbolTable.set(symbolTable.slot(identifier.lexeme), result);
+        if (verbose) {
+            output.print("Assignment: ").print(identifier.lexeme).print(" = ").println(result);
         }
-        return -1;
     }
 
+    // Helper methods
     private double parseValue() {
         Token token = advance();
         if (token.type == TokenType.NUMBER) {
             return (double) token.literal;
         } else if (token.type == TokenType.IDENTIFIER) {
-            Object value = symbolTable.get(token.lexeme);
-            if (value == null) {
+            int slot = symbolTable.slot(token.lexeme);
+            if (!symbolTable.isDefined(slot)) {
                 throw new RuntimeException("Undefined variable: " + token.lexeme);
             }
-            return (double) value;
+            return symbolTable.get(slot);
         } else if (token.type == TokenType.LEFT_PAREN) {
             double result = parseParenthesizedExpression();
             consume(TokenType.RIGHT_PAREN, "Expect ')' after expression.");
@@ -350,12 +362,6 @@ public class Parser {
                 type == TokenType.MOD;
     }
 
-    private boolean isComparisonOperator(TokenType type) {
-        return type == TokenType.LESS || type == TokenType.LESS_EQUAL ||
-                type == TokenType.GREATER || type == TokenType.GREATER_EQUAL ||
-                type == TokenType.EQUALS || type == TokenType.NOT_EQUALS;
-    }
-
     private boolean evaluateCondition(double left, TokenType operator, double right) {
         switch (operator) {
             case LESS: return left < right;
@@ -375,6 +381,14 @@ public class Parser {
         throw new RuntimeException(message);
     }
 
+    private boolean match(TokenType type) {
+        if (check(type)) {
+            advance();
+            return true;
+        }
+        return false;
+    }
+
     private boolean check(TokenType type) {
         if (isAtEnd()) return false;
         return peek().type == type;
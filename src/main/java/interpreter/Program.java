@@ -0,0 +1,105 @@
+package interpreter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A program prepared for execution.
+ * Every line is lexed once and checked by the Analyzer, which also resolves the targets of
+ * GOTO, GOSUB and IF ... THEN and the WHILE/WEND pairs to statement indices, so a jump is an array lookup.
+ */
+public class Program {
+    final int[] lineNumbers; // Line number of each statement, in ascending order
+    final String[] code; // Source text of each statement
+    final List<List<Token>> tokens; // Tokens of each statement
+    final String[] lexErrors; // Lexer error of each statement, null if it lexed fine
+    final int[] jumpTargets; // Statement index a GOTO, GOSUB or IF jumps to, -1 for other statements
+    final int[] loopPartners; // Matching WEND of a WHILE and matching WHILE of a WEND, -1 for other statements
+    final TokenType[] endings; // Statement that decides the next line (GOTO, IF, WHILE, ...), null if the line falls through
+
+    private Program(int size) {
+        lineNumbers = new int[size];
+        code = new String[size];
+        tokens = new ArrayList<>(size);
+        lexErrors = new String[size];
+        jumpTargets = new int[size];
+        loopPartners = new int[size];
+        endings = new TokenType[size];
+    }
+
+    /**
+     * Lex and check the program lines, resolving every jump target and loop.
+     *
+     * @param programLines The program lines.
+     * @return The compiled program.
+     * @throws RuntimeException Listing every error found, if the program is not valid.
+     */
+    public static Program compile(ProgramStore programLines) {
+        Program program = lex(programLines);
+        List<String> errors = new Analyzer(program).analyze();
+        if (!errors.isEmpty()) {
+            StringBuilder message = new StringBuilder(errors.size() + (errors.size() == 1 ? " error" : " errors") + " found:");
+            for (String error : errors) {
+                message.append(System.lineSeparator()).append("  ").append(error);
+            }
+            throw new RuntimeException(message.toString());
+        }
+        return program;
+    }
+
+    /**
+     * Check the program lines without running them.
+     *
+     * @param programLines The program lines.
+     * @return Every error found as "Line N: message". Empty if the program is valid.
+     */
+    public static List<String> check(ProgramStore programLines) {
+        return new Analyzer(lex(programLines)).analyze();
+    }
+
+    private static Program lex(ProgramStore programLines) {
+        Program program = new Program(programLines.size());
+        for (int index = 0; index < programLines.size(); index++) {
+            program.lineNumbers[index] = programLines.lineNumber(index);
+            program.code[index] = programLines.code(index);
+            List<Token> statement;
+            try {
+                statement = new Lexer(program.code[index]).scanTokens();
+            } catch (RuntimeException e) {
+                program.lexErrors[index] = e.getMessage();
+                statement = List.of(new Token(TokenType.EOF, "", null, 1));
+            }
+            program.tokens.add(statement);
+        }
+        return program;
+    }
+
+    /**
+     * @return The number of statements.
+     */
+    public int size() {
+        return lineNumbers.length;
+    }
+
+    /**
+     * Find the statement with the given line number.
+     *
+     * @param lineNumber The line number to look for.
+     * @return Its statement index, or -1 if there is no such line.
+     */
+    public int indexOf(int lineNumber) {
+        int low = 0;
+        int high = lineNumbers.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (lineNumbers[mid] < lineNumber) {
+                low = mid + 1;
+            } else if (lineNumbers[mid] > lineNumber) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,249 @@
+package interpreter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * Generates large, valid BASIC programs for scale testing.
+ * Shapes:
+ * - FLAT: straight-line arithmetic over many variables, every line runs once.
+ * - NESTED: blocks of WHILE loops nested DEPTH deep; the innermost loop runs ITERATIONS times, the others once.
+ * - GOTO: blocks that jump to random other blocks with IF ... THEN and GOTO, until a step budget runs out.
+ * Every program starts by assigning all its variables and ends with PRINT, so it passes the Analyzer.
+ * The same parameters and seed always give the same program.
+ *
+ * Usage: java -cp [classes] interpreter.ProgramGenerator [-shape flat|nested|goto] [-lines n] [-depth n]
+ *        [-vars n] [-iterations n] [-steps n] [-seed n] [output file]
+ * Without an output file the program is written to stdout.
+ */
+public class ProgramGenerator {
+    public enum Shape { FLAT, NESTED, GOTO }
+
+    private static final int LINE_STEP = 10; // Line numbers go 10, 20, 30, ...
+
+    private final Shape shape;
+    private final int lines; // Approximate number of lines
+    private int depth = 16; // WHILE nesting depth (NESTED)
+    private int variables = 100; // Number of variables used by the statements
+    private int iterations = 2; // Runs of the innermost loop (NESTED)
+    private int steps = 100_000; // Blocks executed before the program ends (GOTO)
+    private long seed = 42;
+
+    private int lineNumber = 0;
+    private int written = 0;
+
+    /**
+     * @param shape The kind of program.
+     * @param lines Approximate number of lines; the program ends at the first block boundary past it.
+     */
+    public ProgramGenerator(Shape shape, int lines) {
+        if (lines < 1) {
+            throw new IllegalArgumentException("Program must have at least one line.");
+        }
+        this.shape = shape;
+        this.lines = lines;
+    }
+
+    public void setDepth(int depth) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("Depth must be at least 1.");
+        }
+        this.depth = depth;
+    }
+
+    public void setVariables(int variables) {
+        if (variables < 2) {
+            throw new IllegalArgumentException("At least 2 variables are needed.");
+        }
+        this.variables = variables;
+    }
+
+    public void setIterations(int iterations) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("Iterations must be at least 1.");
+        }
+        this.iterations = iterations;
+    }
+
+    public void setSteps(int steps) {
+        if (steps < 1) {
+            throw new IllegalArgumentException("Steps must be at least 1.");
+        }
+        this.steps = steps;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Write the program to a file.
+     *
+     * @return The number of lines written.
+     */
+    public int write(File file) throws IOException {
+        try (Writer out = new BufferedWriter(new FileWriter(file), 1 << 16)) {
+            return write(out);
+        }
+    }
+
+    /**
+     * Write the program as numbered lines. The writer is not closed.
+     *
+     * @return The number of lines written.
+     */
+    public int write(Writer out) throws IOException {
+        Random random = new Random(seed);
+        lineNumber = 0;
+        written = 0;
+
+        for (int v = 0; v < variables; v++) {
+            line(out, "LET v" + v + " = " + (v + 1));
+        }
+        switch (shape) {
+            case FLAT:
+                while (written < lines) {
+                    line(out, arithmetic(random));
+                }
+                break;
+            case NESTED:
+                while (written < lines) {
+                    nest(out, random);
+                }
+                break;
+            case GOTO:
+                gotoBlocks(out, random);
+                break;
+        }
+        line(out, "PRINT v0");
+        out.flush();
+        return written;
+    }
+
+    // One nest of WHILE loops with a statement at every level
+    private void nest(Writer out, Random random) throws IOException {
+        for (int level = 0; level < depth; level++) {
+            int limit = level == depth - 1 ? iterations : 1;
+            line(out, "LET w" + level + " = 0");
+            line(out, "WHILE w" + level + " < " + limit);
+            line(out, arithmetic(random));
+        }
+        for (int level = depth - 1; level >= 0; level--) {
+            line(out, "w" + level + " = w" + level + " + 1");
+            line(out, "WEND");
+        }
+    }
+
+    // Blocks of 5 lines: count down the budget, compute, then branch to two random blocks
+    private void gotoBlocks(Writer out, Random random) throws IOException {
+        int blocks = Math.max(1, (lines - variables - 2) / 5);
+        int first = lineNumber + LINE_STEP * 3; // After the LET and GOTO below
+        int end = first + blocks * 5 * LINE_STEP;
+        line(out, "LET c = " + steps);
+        line(out, "GOTO " + first);
+        for (int b = 0; b < blocks; b++) {
+            int a = random.nextInt(variables);
+            int x = random.nextInt(variables);
+            line(out, "c = c - 1");
+            line(out, "IF c < 0 THEN " + end);
+            line(out, arithmetic(random));
+            line(out, "IF v" + a + " > v" + x + " THEN " + (first + random.nextInt(blocks) * 5 * LINE_STEP));
+            line(out, "GOTO " + (first + random.nextInt(blocks) * 5 * LINE_STEP));
+        }
+    }
+
+    // vA = vB op vC % 997, kept small so values never overflow or divide by zero
+    private String arithmetic(Random random) {
+        int target = random.nextInt(variables);
+        int left = random.nextInt(variables);
+        int right = random.nextInt(variables);
+        String operator;
+        switch (random.nextInt(3)) {
+            case 0:
+                operator = " + ";
+                break;
+            case 1:
+                operator = " - ";
+                break;
+            default:
+                operator = " * ";
+                break;
+        }
+        return "v" + target + " = v" + left + operator + "v" + right + " % 997 + 1";
+    }
+
+    private void line(Writer out, String code) throws IOException {
+        lineNumber += LINE_STEP;
+        out.write(Integer.toString(lineNumber));
+        out.write(' ');
+        out.write(code);
+        out.write('\n');
+        written++;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Shape shape = Shape.FLAT;
+        int lines = 100_000;
+        int depth = 16;
+        int variables = 100;
+        int iterations = 2;
+        int steps = 100_000;
+        long seed = 42;
+        File outputFile = null;
+        ProgramGenerator generator;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-shape":
+                        shape = Shape.valueOf(args[++i].toUpperCase());
+                        break;
+                    case "-lines":
+                        lines = Integer.parseInt(args[++i]);
+                        break;
+                    case "-depth":
+                        depth = Integer.parseInt(args[++i]);
+                        break;
+                    case "-vars":
+                        variables = Integer.parseInt(args[++i]);
+                        break;
+                    case "-iterations":
+                        iterations = Integer.parseInt(args[++i]);
+                        break;
+                    case "-steps":
+                        steps = Integer.parseInt(args[++i]);
+                        break;
+                    case "-seed":
+                        seed = Long.parseLong(args[++i]);
+                        break;
+                    default:
+                        if (outputFile != null) {
+                            throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+                        }
+                        outputFile = new File(args[i]);
+                }
+            }
+            generator = new ProgramGenerator(shape, lines);
+            generator.setDepth(depth);
+            generator.setVariables(variables);
+            generator.setIterations(iterations);
+            generator.setSteps(steps);
+            generator.setSeed(seed);
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("USAGE: ProgramGenerator [-shape flat|nested|goto] [-lines n] [-depth n] [-vars n]"
+                    + " [-iterations n] [-steps n] [-seed n] [output file]");
+            System.exit(2);
+            return;
+        }
+
+        if (outputFile != null) {
+            generator.write(outputFile);
+        } else {
+            generator.write(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+        }
+    }
+}
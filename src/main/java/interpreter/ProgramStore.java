@@ -0,0 +1,285 @@
+package interpreter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The lines of a program, sorted by line number.
+ * Line numbers are kept in a sorted int array and the text of all lines is packed into one UTF-8 byte array,
+ * so a line costs three ints plus its bytes instead of a map entry, a boxed key and a String.
+ * Replaced or deleted text stays in the byte array until it makes up half of it; then the array is compacted.
+ */
+public class ProgramStore {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private int[] lineNumbers = new int[16]; // Ascending
+    private int[] starts = new int[16]; // Offset of each line's text in text
+    private int[] lengths = new int[16]; // Length of each line's text
+    private byte[] text = new byte[256]; // UTF-8
+    private int size = 0;
+    private int textSize = 0; // Used part of text, including garbage
+    private int garbage = 0; // Bytes of replaced or deleted lines
+
+    /**
+     * @return The number of lines.
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return The line number of the line at the given position, in ascending order.
+     */
+    public int lineNumber(int index) {
+        return lineNumbers[index];
+    }
+
+    /**
+     * @return The code of the line at the given position, in ascending order.
+     */
+    public String code(int index) {
+        return new String(text, starts[index], lengths[index], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The code of the line with the given number, or null if there is no such line.
+     */
+    public String get(int lineNumber) {
+        int index = Arrays.binarySearch(lineNumbers, 0, size, lineNumber);
+        return index >= 0 ? code(index) : null;
+    }
+
+    /**
+     * Add a line, or replace the code of an existing line.
+     */
+    public void put(int lineNumber, CharSequence code) {
+        int index = size > 0 && lineNumbers[size - 1] < lineNumber
+                ? -size - 1 // Appending in order, the usual case
+                : Arrays.binarySearch(lineNumbers, 0, size, lineNumber);
+        if (index >= 0) {
+            garbage += lengths[index];
+        } else {
+            index = -index - 1;
+            ensureLines(size + 1);
+            System.arraycopy(lineNumbers, index, lineNumbers, index + 1, size - index);
+            System.arraycopy(starts, index, starts, index + 1, size - index);
+            System.arraycopy(lengths, index, lengths, index + 1, size - index);
+            lineNumbers[index] = lineNumber;
+            size++;
+        }
+        byte[] bytes = code.toString().getBytes(StandardCharsets.UTF_8);
+        ensureText(bytes.length);
+        starts[index] = textSize;
+        lengths[index] = bytes.length;
+        System.arraycopy(bytes, 0, text, textSize, bytes.length);
+        textSize += bytes.length;
+    }
+
+    /**
+     * Remove a line.
+     *
+     * @return true if the line existed.
+     */
+    public boolean remove(int lineNumber) {
+        int index = Arrays.binarySearch(lineNumbers, 0, size, lineNumber);
+        if (index < 0) {
+            return false;
+        }
+        garbage += lengths[index];
+        System.arraycopy(lineNumbers, index + 1, lineNumbers, index, size - index - 1);
+        System.arraycopy(starts, index + 1, starts, index, size - index - 1);
+        System.arraycopy(lengths, index + 1, lengths, index, size - index - 1);
+        size--;
+        return true;
+    }
+
+    private void ensureLines(int needed) {
+        if (needed > lineNumbers.length) {
+            int capacity = Math.max(needed, lineNumbers.length * 2);
+            lineNumbers = Arrays.copyOf(lineNumbers, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+    }
+
+    // Make room for more bytes, dropping the text of replaced and deleted lines first if it is worth it
+    private void ensureText(int needed) {
+        if (textSize + needed <= text.length) {
+            return;
+        }
+        if (garbage > textSize / 2) {
+            byte[] compacted = new byte[Math.max(text.length, textSize - garbage + needed)];
+            int position = 0;
+            for (int i = 0; i < size; i++) {
+                System.arraycopy(text, starts[i], compacted, position, lengths[i]);
+                starts[i] = position;
+                position += lengths[i];
+            }
+            text = compacted;
+            textSize = position;
+            garbage = 0;
+        }
+        if (textSize + needed > text.length) {
+            text = Arrays.copyOf(text, Math.max(textSize + needed, text.length * 2));
+        }
+    }
+
+    /**
+     * Read a program file. See read(ReadableByteChannel) for the format.
+     */
+    public static ProgramStore read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return read(channel);
+        }
+    }
+
+    /**
+     * Read program text: one line per program line, the line number, a space, then the code (UTF-8).
+     * Lines without a space are skipped. The code is trimmed; a later line with the same number replaces an earlier one.
+     * Line numbers are parsed straight from the bytes and the code bytes are copied into the packed text.
+     * The channel is not closed.
+     *
+     * @throws NumberFormatException If a line number is invalid.
+     */
+    public static ProgramStore read(ReadableByteChannel channel) throws IOException {
+        ProgramStore store = new ProgramStore();
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        byte[] bytes = buffer.array();
+        byte[] line = new byte[256]; // The current line, which may span reads
+        int lineLength = 0;
+        boolean afterCarriageReturn = false;
+
+        while (channel.read(buffer) != -1) {
+            int end = buffer.position();
+            for (int i = 0; i < end; i++) {
+                byte b = bytes[i];
+                if (b == '\n' || b == '\r') {
+                    if (!(b == '\n' && afterCarriageReturn)) { // \r\n ends one line, not two
+                        store.appendLine(line, lineLength);
+                    }
+                    lineLength = 0;
+                    afterCarriageReturn = b == '\r';
+                    continue;
+                }
+                afterCarriageReturn = false;
+                if (lineLength == line.length) {
+                    line = Arrays.copyOf(line, line.length * 2);
+                }
+                line[lineLength++] = b;
+            }
+            buffer.clear();
+        }
+        if (lineLength > 0) {
+            store.appendLine(line, lineLength);
+        }
+        store.sortLines();
+        return store;
+    }
+
+    // Add one raw line at the end; lines are only sorted once the whole text is read
+    private void appendLine(byte[] line, int length) {
+        int space = 0;
+        while (space < length && line[space] != ' ') {
+            space++;
+        }
+        if (space == length) {
+            return; // No line number and code
+        }
+        int lineNumber = parseLineNumber(line, space);
+
+        // Trim like String.trim: drop control characters and spaces at both ends
+        int from = space + 1;
+        int to = length;
+        while (from < to && (line[from] & 0xFF) <= ' ') {
+            from++;
+        }
+        while (to > from && (line[to - 1] & 0xFF) <= ' ') {
+            to--;
+        }
+
+        ensureLines(size + 1);
+        ensureText(to - from);
+        lineNumbers[size] = lineNumber;
+        starts[size] = textSize;
+        lengths[size] = to - from;
+        System.arraycopy(line, from, text, textSize, to - from);
+        textSize += to - from;
+        size++;
+    }
+
+    // Same rules as Integer.parseInt: optional sign, then decimal digits that fit in an int
+    private static int parseLineNumber(byte[] line, int end) {
+        int i = 0;
+        boolean negative = false;
+        if (end > 0 && (line[0] == '-' || line[0] == '+')) {
+            negative = line[0] == '-';
+            i = 1;
+        }
+        if (i == end) {
+            throw new NumberFormatException("Invalid line number: " + new String(line, 0, end));
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = line[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Invalid line number: " + new String(line, 0, end));
+            }
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw new NumberFormatException("Invalid line number: " + new String(line, 0, end));
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Invalid line number: " + new String(line, 0, end));
+        }
+        return (int) value;
+    }
+
+    // Sort the lines read out of order; for duplicate numbers the last line read wins
+    private void sortLines() {
+        boolean sorted = true;
+        for (int i = 1; i < size && sorted; i++) {
+            sorted = lineNumbers[i - 1] < lineNumbers[i];
+        }
+        if (sorted) {
+            return;
+        }
+        // Sort (line number, read order) pairs packed into longs, then keep the last of each number
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = ((long) lineNumbers[i] << 32) | i;
+        }
+        Arrays.sort(keys);
+        int[] newNumbers = new int[lineNumbers.length];
+        int[] newStarts = new int[lineNumbers.length];
+        int[] newLengths = new int[lineNumbers.length];
+        int count = 0;
+        for (int k = 0; k < size; k++) {
+            int index = (int) keys[k];
+            int lineNumber = (int) (keys[k] >> 32);
+            if (count > 0 && newNumbers[count - 1] == lineNumber) {
+                garbage += newLengths[count - 1];
+                count--; // Replaced by a later line with the same number
+            }
+            newNumbers[count] = lineNumber;
+            newStarts[count] = starts[index];
+            newLengths[count] = lengths[index];
+            count++;
+        }
+        lineNumbers = newNumbers;
+        starts = newStarts;
+        lengths = newLengths;
+        size = count;
+    }
+}
@@ -0,0 +1,128 @@
+package interpreter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Headless entry point: runs one program file and exits.
+ * There is no banner, no REPL and no execution trace, only the program's own output,
+ * which makes it suitable for shell pipelines.
+ *
+ * Usage: java -cp [classes] interpreter.Runner [options] [program file] [input file]
+ * Options: -output [file] writes the program output to a file instead of stdout,
+ *          -checkpoint [file] saves the execution state to a file every -interval [seconds] (default 60),
+ *          -resume continues from the checkpoint file if it exists. The checkpoint file is deleted when the program ends.
+ *          -flush-bytes [n] and -flush-millis [ms] write the output once n bytes or ms milliseconds have waited
+ *          (default 8192 bytes, 50 ms; at most 64 MB).
+ * The GOSUB stack depth can be set with -Dbasic.gosubDepth=[n], and -Dbasic.jit=false turns off the hot-loop compiler.
+ * Exit codes: 0 on success, 1 on a program error, 2 on bad usage, unreadable files or an empty program.
+ */
+public class Runner {
+
+    private static final String USAGE = "USAGE: Runner [-output file] [-checkpoint file] [-interval seconds] [-resume]"
+            + " [-flush-bytes n] [-flush-millis ms] [program file] [input file]";
+
+    public static void main(String[] args) {
+        File outputFile = null;
+        File checkpointFile = null;
+        long intervalSeconds = 60;
+        boolean resume = false;
+        int flushBytes = OutputPipeline.DEFAULT_FLUSH_THRESHOLD;
+        long flushMillis = OutputPipeline.DEFAULT_FLUSH_INTERVAL_MILLIS;
+        List<String> files = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-output")) {
+                    outputFile = new File(args[++i]);
+                } else if (args[i].equals("-checkpoint")) {
+                    checkpointFile = new File(args[++i]);
+                } else if (args[i].equals("-interval")) {
+                    intervalSeconds = Long.parseLong(args[++i]);
+                } else if (args[i].equals("-resume")) {
+                    resume = true;
+                } else if (args[i].equals("-flush-bytes")) {
+                    flushBytes = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-flush-millis")) {
+                    flushMillis = Long.parseLong(args[++i]);
+                } else {
+                    files.add(args[i]);
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            files.clear();
+        }
+        if (files.isEmpty() || files.size() > 2 || intervalSeconds < 1 || flushBytes < 1
+                || flushBytes > OutputPipeline.MAX_FLUSH_THRESHOLD || flushMillis < 1
+                || (resume && checkpointFile == null)) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        File programFile = new File(files.get(0));
+        File inputFile = files.size() == 2 ? new File(files.get(1)) : null;
+        if (inputFile != null && !inputFile.isFile()) {
+            System.err.println("BASIC> NO INPUT FILE FOUND: " + inputFile.getPath());
+            System.exit(2);
+        }
+
+        Interpreter interpreter = new Interpreter();
+        interpreter.setVerbose(false);
+        interpreter.setMaxGosubDepth(Integer.getInteger("basic.gosubDepth", Interpreter.DEFAULT_MAX_GOSUB_DEPTH));
+        interpreter.setJitEnabled(!"false".equals(System.getProperty("basic.jit")));
+        interpreter.setFlushPolicy(flushBytes, flushMillis);
+        if (checkpointFile != null) {
+            interpreter.setCheckpoint(checkpointFile, intervalSeconds * 1000);
+            interpreter.setResume(resume);
+        }
+
+        ProgramStore programLines;
+        try {
+            programLines = interpreter.readProgram(programFile);
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("BASIC> ERROR WHILE LOADING PROGRAM: " + programFile.getPath());
+            System.exit(2);
+            return;
+        }
+        if (programLines.isEmpty()) {
+            System.err.println("BASIC> NO PROGRAM TO RUN: " + programFile.getPath());
+            System.exit(2);
+        }
+
+        FileChannel output = null;
+        if (outputFile != null) {
+            try {
+                // Not truncated when resuming: the interpreter cuts the file back to the checkpointed output,
+                // or empties it if the checkpoint file is missing or holds no valid record
+                output = FileChannel.open(outputFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                if (!resume) {
+                    output.truncate(0);
+                }
+                interpreter.setOutput(output);
+            } catch (IOException e) {
+                System.err.println("BASIC> CANNOT WRITE: " + outputFile.getPath());
+                System.exit(2);
+            }
+        }
+
+        int status = 0;
+        try {
+            interpreter.runProgram(programLines, inputFile);
+        } catch (RuntimeException e) {
+            System.err.println("BASIC> ERROR: " + e.getMessage());
+            status = 1;
+        }
+        if (output != null) {
+            try {
+                output.close();
+            } catch (IOException e) {
+                System.err.println("BASIC> CANNOT WRITE: " + outputFile.getPath());
+                status = 2;
+            }
+        }
+        System.exit(status);
+    }
+}
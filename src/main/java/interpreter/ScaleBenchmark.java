@@ -0,0 +1,184 @@
+package interpreter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.ref.Reference;
+import java.nio.channels.Channels;
+
+/**
+ * Measures how loading, compiling and running a program scale with its size.
+ * For each shape, programs from ProgramGenerator are doubled in size from -from to -to lines, and every
+ * size reports the best time of -runs runs per phase, plus the heap the loaded and compiled program keeps.
+ * The phases are Interpreter.readProgram, Program.compile and Interpreter.runProgram (which compiles again).
+ * Work that grows linearly with the program keeps the time per line flat. The growth exponent
+ * (1 = linear, 2 = quadratic) is the slope of a least-squares line through log(time) over log(lines) at every
+ * size, so one noisy measurement does not decide the result. At least three sizes and three runs are required.
+ *
+ * Usage: java -cp [classes] interpreter.ScaleBenchmark [-shape flat|nested|goto|all] [-from lines] [-to lines]
+ *        [-runs n] [-max-exponent x]
+ * Exit codes: 0 if every phase scaled below the maximum exponent (default 1.5), 1 otherwise, 2 on bad usage.
+ */
+public class ScaleBenchmark {
+    private static final String[] PHASES = {"load", "compile", "run"};
+    private static final int MIN_RUNS = 3; // Best of fewer runs is too noisy to fit
+
+    private final Interpreter interpreter = new Interpreter();
+    private final int runs;
+
+    private ScaleBenchmark(int runs) {
+        this.runs = runs;
+        interpreter.setVerbose(false);
+        interpreter.setOutput(Channels.newChannel(OutputStream.nullOutputStream()));
+    }
+
+    public static void main(String[] args) throws IOException {
+        String shapeName = "all";
+        int from = 10_000;
+        int to = 320_000;
+        int runs = 3;
+        double maxExponent = 1.5;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-shape":
+                        shapeName = args[++i].toLowerCase();
+                        break;
+                    case "-from":
+                        from = Integer.parseInt(args[++i]);
+                        break;
+                    case "-to":
+                        to = Integer.parseInt(args[++i]);
+                        break;
+                    case "-runs":
+                        runs = Integer.parseInt(args[++i]);
+                        break;
+                    case "-max-exponent":
+                        maxExponent = Double.parseDouble(args[++i]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+                }
+            }
+            if (from < 1000 || to < from * 4 || runs < MIN_RUNS) {
+                throw new IllegalArgumentException("Need -from >= 1000, -to >= 4 * -from and -runs >= " + MIN_RUNS + ".");
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("USAGE: ScaleBenchmark [-shape flat|nested|goto|all] [-from lines] [-to lines]"
+                    + " [-runs n] [-max-exponent x]");
+            System.exit(2);
+            return;
+        }
+
+        ProgramGenerator.Shape[] shapes;
+        if (shapeName.equals("all")) {
+            shapes = ProgramGenerator.Shape.values();
+        } else {
+            try {
+                shapes = new ProgramGenerator.Shape[]{ProgramGenerator.Shape.valueOf(shapeName.toUpperCase())};
+            } catch (IllegalArgumentException e) {
+                System.err.println("BASIC> UNKNOWN SHAPE: " + shapeName);
+                System.exit(2);
+                return;
+            }
+        }
+
+        ScaleBenchmark benchmark = new ScaleBenchmark(runs);
+        boolean passed = true;
+        for (ProgramGenerator.Shape shape : shapes) {
+            passed &= benchmark.measure(shape, from, to, maxExponent);
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    // Measure one shape at doubling sizes; false if a phase grew faster than maxExponent
+    private boolean measure(ProgramGenerator.Shape shape, int from, int to, double maxExponent) throws IOException {
+        System.out.println(shape);
+        System.out.printf("%10s %12s %12s %12s %10s %14s%n", "lines", "load ms", "compile ms", "run ms", "heap MB", "bytes/line");
+
+        int sizes = 0;
+        double[] logLines = new double[32];
+        double[][] logTimes = new double[PHASES.length][32];
+        File file = File.createTempFile("basic-scale", ".bas");
+        try {
+            for (int lines = from; lines <= to; lines *= 2) {
+                ProgramGenerator generator = new ProgramGenerator(shape, lines);
+                int written = generator.write(file);
+
+                double[] times = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE};
+                long retained = 0;
+                for (int run = 0; run < runs; run++) {
+                    long before = usedHeap();
+                    long start = System.nanoTime();
+                    ProgramStore programLines = interpreter.readProgram(file);
+                    long loaded = System.nanoTime();
+                    Program program = Program.compile(programLines);
+                    long compiled = System.nanoTime();
+                    retained = usedHeap() - before; // The lines and the compiled program are still reachable
+                    Reference.reachabilityFence(program);
+                    program = null; // runProgram compiles its own
+
+                    long started = System.nanoTime();
+                    interpreter.runProgram(programLines);
+                    long finished = System.nanoTime();
+                    // Drop the lines too: a stale local slot would count them in the next run's baseline
+                    programLines = null;
+
+                    times[0] = Math.min(times[0], (loaded - start) / 1e6);
+                    times[1] = Math.min(times[1], (compiled - loaded) / 1e6);
+                    times[2] = Math.min(times[2], (finished - started) / 1e6);
+                }
+                System.out.printf("%10d %12.1f %12.1f %12.1f %10.1f %14d%n", written, times[0], times[1], times[2],
+                        retained / (1024.0 * 1024.0), retained / written);
+                logLines[sizes] = Math.log(written);
+                for (int phase = 0; phase < PHASES.length; phase++) {
+                    logTimes[phase][sizes] = Math.log(Math.max(times[phase], 0.001)); // Clamp a 0 ms timing
+                }
+                sizes++;
+            }
+        } finally {
+            file.delete();
+        }
+
+        boolean passed = true;
+        StringBuilder report = new StringBuilder("growth exponent:");
+        for (int phase = 0; phase < PHASES.length; phase++) {
+            double exponent = slope(logLines, logTimes[phase], sizes);
+            report.append(' ').append(PHASES[phase]).append(String.format(" %.2f", exponent));
+            if (exponent > maxExponent) {
+                report.append(" (SUPERLINEAR)");
+                passed = false;
+            }
+        }
+        System.out.println(report);
+        System.out.println();
+        return passed;
+    }
+
+    // Least-squares slope of y over x for the first n points
+    private static double slope(double[] x, double[] y, int n) {
+        double meanX = 0;
+        double meanY = 0;
+        for (int i = 0; i < n; i++) {
+            meanX += x[i];
+            meanY += y[i];
+        }
+        meanX /= n;
+        meanY /= n;
+        double covariance = 0;
+        double variance = 0;
+        for (int i = 0; i < n; i++) {
+            covariance += (x[i] - meanX) * (y[i] - meanY);
+            variance += (x[i] - meanX) * (x[i] - meanX);
+        }
+        return covariance / variance;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,334 @@
+package interpreter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs many programs on a pool of local worker JVMs.
+ * Each worker is a separate process (see Worker) that receives programs over its stdin/stdout pipes,
+ * so a program that runs out of memory or loops forever only takes down its own worker.
+ * A worker is replaced when:
+ * - a program runs longer than the time limit (the worker is killed),
+ * - the worker dies, e.g. on OutOfMemoryError with its -Xmx heap limit,
+ * - its heap use after the last garbage collection is above 75% of the limit once a program ends.
+ * Program output is written to stdout in the order the programs were given; errors go to stderr.
+ * Workers stream output while a program runs. The program whose turn it is prints straight to stdout,
+ * later ones are spilled to a temporary file each until every earlier program is done, so no program's
+ * output can fill the supervisor's heap.
+ *
+ * Usage: java -cp [classes] interpreter.Supervisor [options] [program file][=input file] ...
+ * Options: -workers [n] (default: number of cores), -memory [MB per worker] (default 256),
+ *          -timeout [seconds per program] (default 60)
+ * Exit codes: 0 if every program succeeded, 1 if any failed, 2 on bad usage.
+ */
+public class Supervisor {
+    private static final double RECYCLE_HEAP_FRACTION = 0.75;
+
+    private final int memoryMb;
+    private final long timeoutMillis;
+    private final ScheduledExecutorService watchdog;
+
+    // Results are printed in job order as soon as all earlier jobs are done
+    private final File[] spillFiles; // Output of jobs that are not yet next to print
+    private final OutputStream[] spills; // Open while the job is still running
+    private final String[] errors;
+    private final String[] names;
+    private final boolean[] done;
+    private int nextToPrint = 0;
+    private boolean anyFailed = false;
+
+    private Supervisor(int jobs, int memoryMb, long timeoutMillis) {
+        this.memoryMb = memoryMb;
+        this.timeoutMillis = timeoutMillis;
+        this.spillFiles = new File[jobs];
+        this.spills = new OutputStream[jobs];
+        this.errors = new String[jobs];
+        this.names = new String[jobs];
+        this.done = new boolean[jobs];
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "basic-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int workers = Runtime.getRuntime().availableProcessors();
+        int memoryMb = 256;
+        long timeoutSeconds = 60;
+        List<String> jobArgs = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-workers")) {
+                    workers = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-memory")) {
+                    memoryMb = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-timeout")) {
+                    timeoutSeconds = Long.parseLong(args[++i]);
+                } else {
+                    jobArgs.add(args[i]);
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            jobArgs.clear();
+        }
+        if (jobArgs.isEmpty() || workers < 1 || memoryMb < 16 || timeoutSeconds < 1) {
+            System.err.println("USAGE: Supervisor [-workers n] [-memory MB] [-timeout seconds] [program file][=input file] ...");
+            System.exit(2);
+        }
+
+        // Read every job up front so a missing file is reported before any worker starts
+        int jobCount = jobArgs.size();
+        byte[][] programs = new byte[jobCount][];
+        byte[][] inputs = new byte[jobCount][];
+        Supervisor supervisor = new Supervisor(jobCount, memoryMb, TimeUnit.SECONDS.toMillis(timeoutSeconds));
+        for (int i = 0; i < jobCount; i++) {
+            String[] parts = jobArgs.get(i).split("=", 2);
+            supervisor.names[i] = parts[0];
+            try {
+                programs[i] = Files.readAllBytes(new File(parts[0]).toPath());
+                inputs[i] = parts.length == 2 ? Files.readAllBytes(new File(parts[1]).toPath()) : new byte[0];
+            } catch (IOException e) {
+                System.err.println("BASIC> CANNOT READ: " + jobArgs.get(i));
+                System.exit(2);
+            }
+        }
+
+        AtomicInteger nextJob = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < Math.min(workers, jobCount); w++) {
+            Thread thread = new Thread(() -> supervisor.dispatch(nextJob, programs, inputs), "basic-dispatch-" + w);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        System.exit(supervisor.anyFailed ? 1 : 0);
+    }
+
+    // One dispatcher thread per worker process: take jobs until none are left
+    private void dispatch(AtomicInteger nextJob, byte[][] programs, byte[][] inputs) {
+        WorkerProcess worker = null;
+        int job;
+        while ((job = nextJob.getAndIncrement()) < programs.length) {
+            try {
+                if (worker == null) {
+                    worker = new WorkerProcess();
+                }
+                worker.run(job, programs[job], inputs[job]);
+                complete(job, worker.status == Worker.OK ? null : worker.error);
+                if (worker.heapUsed > RECYCLE_HEAP_FRACTION * memoryMb * 1024 * 1024) {
+                    worker.stop(); // Heap grew too much: start fresh for the next program
+                    worker = null;
+                }
+            } catch (IOException e) {
+                // The worker was killed by the watchdog or died on its own
+                String reason = worker != null && worker.timedOut()
+                        ? "TIME LIMIT EXCEEDED (" + timeoutMillis / 1000 + " s)"
+                        : "WORKER CRASHED" + (worker != null ? worker.exitDescription() : "");
+                complete(job, reason);
+                if (worker != null) {
+                    worker.kill();
+                }
+                worker = null;
+            } catch (Throwable e) {
+                // E.g. the output could not be spilled: fail this job only, and never leave its worker behind
+                if (worker != null) {
+                    worker.kill();
+                }
+                worker = null;
+                complete(job, "SUPERVISOR ERROR: " + e);
+            }
+        }
+        if (worker != null) {
+            worker.stop();
+        }
+    }
+
+    // Output of a running job: printed now if it is the job's turn, spilled to its file otherwise
+    private synchronized void output(int job, byte[] bytes, int length) {
+        if (job == nextToPrint) {
+            System.out.write(bytes, 0, length);
+            System.out.flush();
+            return;
+        }
+        try {
+            if (spills[job] == null) {
+                spillFiles[job] = File.createTempFile("basic-job", ".out");
+                spillFiles[job].deleteOnExit();
+                spills[job] = new BufferedOutputStream(new FileOutputStream(spillFiles[job]));
+            }
+            spills[job].write(bytes, 0, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot hold output: " + e.getMessage(), e);
+        }
+    }
+
+    private synchronized void complete(int job, String error) {
+        errors[job] = error;
+        done[job] = true;
+        closeSpill(job); // Done jobs keep no file open while they wait for their turn
+        while (nextToPrint < done.length && done[nextToPrint]) {
+            if (errors[nextToPrint] != null) {
+                anyFailed = true;
+                System.err.println("BASIC> " + names[nextToPrint] + ": ERROR: " + errors[nextToPrint]);
+            }
+            nextToPrint++;
+            // The next job's turn: what it printed so far goes out, the rest is printed as it arrives
+            if (nextToPrint < done.length && spillFiles[nextToPrint] != null) {
+                closeSpill(nextToPrint);
+                File file = spillFiles[nextToPrint];
+                spillFiles[nextToPrint] = null;
+                try {
+                    Files.copy(file.toPath(), System.out);
+                    System.out.flush();
+                } catch (IOException e) {
+                    anyFailed = true;
+                    System.err.println("BASIC> " + names[nextToPrint] + ": ERROR: OUTPUT LOST: " + e.getMessage());
+                }
+                file.delete();
+            }
+        }
+    }
+
+    private void closeSpill(int job) {
+        if (spills[job] != null) {
+            try {
+                spills[job].close();
+            } catch (IOException e) {
+                errors[job] = errors[job] != null ? errors[job] : "OUTPUT LOST: " + e.getMessage();
+            }
+            spills[job] = null;
+        }
+    }
+
+    /**
+     * A worker JVM and its pipes.
+     */
+    private final class WorkerProcess {
+        private final Process process;
+        private final DataOutputStream requests;
+        private final DataInputStream responses;
+        // Per job, guarded by this: the watchdog only kills a worker that is still running the job it was set for
+        private boolean running = false;
+        private boolean timedOut = false;
+
+        // Result of the last run
+        private byte status;
+        private String error;
+        private long heapUsed;
+
+        WorkerProcess() throws IOException {
+            String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+            List<String> command = List.of(java, "-Xmx" + memoryMb + "m", "-XX:+ExitOnOutOfMemoryError",
+                    "-cp", System.getProperty("java.class.path"), Worker.class.getName());
+            process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            requests = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            responses = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+        }
+
+        void run(int job, byte[] program, byte[] input) throws IOException {
+            synchronized (this) {
+                running = true;
+                timedOut = false;
+            }
+            ScheduledFuture<?> kill = watchdog.schedule(() -> {
+                synchronized (this) {
+                    if (running) {
+                        timedOut = true;
+                        process.destroyForcibly();
+                    }
+                }
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+            try {
+                requests.writeInt(program.length);
+                requests.write(program);
+                requests.writeInt(input.length);
+                requests.write(input);
+                requests.flush();
+
+                if (responses.readInt() != Worker.MAGIC) {
+                    throw new IOException("Unexpected data from worker.");
+                }
+                byte[] chunk = new byte[8192];
+                byte frame;
+                while ((frame = responses.readByte()) == Worker.OUTPUT) {
+                    int length = responses.readInt();
+                    if (length < 0 || length > Worker.MAX_FRAME_LENGTH) {
+                        throw new IOException("Unexpected data from worker.");
+                    }
+                    if (length > chunk.length) {
+                        chunk = new byte[length];
+                    }
+                    responses.readFully(chunk, 0, length);
+                    output(job, chunk, length);
+                }
+                if (frame != Worker.RESULT) {
+                    throw new IOException("Unexpected data from worker.");
+                }
+                status = responses.readByte();
+                error = responses.readUTF();
+                heapUsed = responses.readLong();
+            } finally {
+                synchronized (this) {
+                    running = false;
+                    kill.cancel(false);
+                }
+            }
+            if (timedOut()) {
+                // Killed just after the response arrived: the result stands for a timeout and the worker is gone
+                throw new IOException("Time limit exceeded.");
+            }
+        }
+
+        synchronized boolean timedOut() {
+            return timedOut;
+        }
+
+        String exitDescription() {
+            try {
+                if (process.waitFor(1, TimeUnit.SECONDS)) {
+                    return " (exit code " + process.exitValue() + ")";
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "";
+        }
+
+        // Close the pipe so the worker exits by itself
+        void stop() {
+            try {
+                requests.close();
+                if (!process.waitFor(5, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (IOException e) {
+                process.destroyForcibly();
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void kill() {
+            process.destroyForcibly();
+        }
+    }
+}
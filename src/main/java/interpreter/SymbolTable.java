@@ -0,0 +1,93 @@
+package interpreter;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Variables of a running program.
+ * Every variable name gets a numbered slot holding an unboxed double. The baseline interpreter
+ * looks slots up by name, while compiled traces keep the slot numbers and skip the lookup.
+ */
+public class SymbolTable {
+    private final Map<String, Integer> slots = new HashMap<>(); // Variable name -> slot
+    private String[] names = new String[16];
+    private double[] values = new double[16];
+    private boolean[] defined = new boolean[16];
+    private int size = 0;
+
+    /**
+     * Get the slot of a variable, creating it (undefined) if it does not exist yet.
+     *
+     * @param name The variable name.
+     * @return The slot number.
+     */
+    public int slot(String name) {
+        Integer slot = slots.get(name);
+        if (slot != null) {
+            return slot;
+        }
+        if (size == values.length) {
+            names = Arrays.copyOf(names, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+            defined = Arrays.copyOf(defined, size * 2);
+        }
+        names[size] = name;
+        slots.put(name, size);
+        return size++;
+    }
+
+    /**
+     * @return true if a value was assigned to the slot.
+     */
+    public boolean isDefined(int slot) {
+        return defined[slot];
+    }
+
+    /**
+     * @return The value in the slot.
+     */
+    public double get(int slot) {
+        return values[slot];
+    }
+
+    /**
+     * Assign a value to the slot.
+     */
+    public void set(int slot, double value) {
+        values[slot] = value;
+        defined[slot] = true;
+    }
+
+    /**
+     * @return The name of the variable in the slot.
+     */
+    public String name(int slot) {
+        return names[slot];
+    }
+
+    /**
+     * @return The number of slots.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The backing array of values, indexed by slot. It is replaced when the table grows,
+     * so callers must fetch it again after new variables may have been created.
+     */
+    double[] values() {
+        return values;
+    }
+
+    /**
+     * Remove all variables.
+     */
+    public void clear() {
+        slots.clear();
+        Arrays.fill(names, 0, size, null);
+        Arrays.fill(defined, 0, size, false);
+        size = 0;
+    }
+}
@@ -1,7 +1,7 @@
 package interpreter;
 public enum TokenType {
     // Single-character tokens
-    LEFT_PAREN, RIGHT_PAREN,
+    LEFT_PAREN, RIGHT_PAREN, COMMA,
     PLUS, MINUS, MULTIPLY, DIVIDE, MOD,
     EQUALS,
 
@@ -14,8 +14,9 @@ public enum TokenType {
     IDENTIFIER, STRING, NUMBER,
 
     // Keywords
-    LET, PRINT, INPUT,
+    LET, PRINT, INPUT, READ, DATA,
     IF, THEN, ELSE, ENDIF, GOTO,
+    GOSUB, RETURN,
     WHILE, WEND,
     END, REM,
 
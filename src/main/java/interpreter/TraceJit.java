@@ -0,0 +1,465 @@
+package interpreter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Adaptive tier for hot loops.
+ * The interpreter reports every statement it runs. Back-edges (WEND, and GOTO or IF ... THEN jumping
+ * backwards) are counted per loop header. Once a header reaches HOT_THRESHOLD, the next iteration is
+ * recorded line by line and compiled into a Trace: a chain of closures with variable slots and
+ * constants baked in, and a guard wherever the recorded iteration took a branch.
+ * When a guard fails the trace returns the line where the interpreter should continue.
+ * Cold code, and loops that cannot be compiled, stay on the Parser path.
+ */
+class TraceJit {
+    static final int HOT_THRESHOLD = 50; // Back-edges before a loop is recorded
+    static final int MAX_TRACE_LENGTH = 1000; // Lines in one recorded iteration
+
+    private final Program program;
+    private final SymbolTable symbols;
+    private final OutputPipeline output;
+    private final boolean verbose;
+
+    private final int[] backEdges; // Back-edge count per loop header
+    private final Trace[] traces; // Compiled trace per loop header
+    private final boolean[] rejected; // Headers whose loop cannot be compiled
+
+    // Recording of one iteration: line index and the line that ran after it
+    private int recordingHeader = -1;
+    private int[] recordedLines = new int[64];
+    private int[] recordedNext = new int[64];
+    private int recordedLength = 0;
+
+    TraceJit(Program program, SymbolTable symbols, OutputPipeline output, boolean verbose) {
+        this.program = program;
+        this.symbols = symbols;
+        this.output = output;
+        this.verbose = verbose;
+        this.backEdges = new int[program.size()];
+        this.traces = new Trace[program.size()];
+        this.rejected = new boolean[program.size()];
+    }
+
+    /**
+     * @return The compiled trace starting at this line, or null to use the interpreter.
+     */
+    Trace traceAt(int index) {
+        return recordingHeader == -1 ? traces[index] : null; // Recording needs to see every line
+    }
+
+    /**
+     * Report a statement run by the interpreter.
+     *
+     * @param index The statement that ran.
+     * @param next  The statement that runs next, or Parser.HALT.
+     */
+    void afterStatement(int index, int next) {
+        if (recordingHeader != -1) {
+            record(index, next);
+            return;
+        }
+        if (next >= 0 && next <= index && isBackEdge(index)) {
+            if (++backEdges[next] >= HOT_THRESHOLD && traces[next] == null && !rejected[next]) {
+                recordingHeader = next;
+                recordedLength = 0;
+            }
+        }
+    }
+
+    private boolean isBackEdge(int index) {
+        TokenType ending = program.endings[index];
+        return ending == TokenType.WEND || ending == TokenType.GOTO || ending == TokenType.IF;
+    }
+
+    private void record(int index, int next) {
+        TokenType ending = program.endings[index];
+        if (ending == TokenType.GOSUB || ending == TokenType.RETURN || ending == TokenType.INPUT
+                || recordedLength == MAX_TRACE_LENGTH || (index != recordingHeader && traces[index] != null)) {
+            reject(); // Call stack, input or another compiled loop: leave this loop to the interpreter
+            return;
+        }
+        if (next < 0) {
+            recordingHeader = -1; // Program ended while recording
+            return;
+        }
+
+        if (recordedLength == recordedLines.length) {
+            recordedLines = Arrays.copyOf(recordedLines, recordedLength * 2);
+            recordedNext = Arrays.copyOf(recordedNext, recordedLength * 2);
+        }
+        recordedLines[recordedLength] = index;
+        recordedNext[recordedLength] = next;
+        recordedLength++;
+
+        if (next == recordingHeader) {
+            Trace trace = compile();
+            if (trace == null) {
+                reject();
+            } else {
+                traces[recordingHeader] = trace;
+                recordingHeader = -1;
+            }
+        }
+    }
+
+    private void reject() {
+        rejected[recordingHeader] = true;
+        recordingHeader = -1;
+    }
+
+    /**
+     * One compiled loop iteration.
+     */
+    static final class Trace {
+        private final int header;
+        private final Step[] steps;
+        private final int[] exits; // Where to continue when the guard in the matching step fails
+
+        private Trace(int header, Step[] steps, int[] exits) {
+            this.header = header;
+            this.steps = steps;
+            this.exits = exits;
+        }
+
+        /**
+         * Run one iteration.
+         *
+         * @return The header to run the next iteration, the line to continue at after a failed guard, or Parser.HALT.
+         */
+        int run(SymbolTable symbols) {
+            double[] slots = symbols.values();
+            for (int i = 0; i < steps.length; i++) {
+                if (!steps[i].run(slots)) {
+                    return exits[i];
+                }
+            }
+            return header;
+        }
+    }
+
+    // A compiled piece of a line; returns false when its guard fails
+    interface Step {
+        boolean run(double[] slots);
+    }
+
+    interface Expr {
+        double eval(double[] slots);
+    }
+
+    private static final class Constant implements Expr {
+        final double value;
+
+        Constant(double value) {
+            this.value = value;
+        }
+
+        public double eval(double[] slots) {
+            return value;
+        }
+    }
+
+    private static final class Variable implements Expr {
+        final int slot;
+
+        Variable(int slot) {
+            this.slot = slot;
+        }
+
+        public double eval(double[] slots) {
+            return slots[slot];
+        }
+    }
+
+    // Thrown while compiling a line the trace cannot handle
+    private static final class Unsupported extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+
+    // Compiler state for the current line
+    private List<Token> tokens;
+    private int current;
+
+    private Trace compile() {
+        List<Step> steps = new ArrayList<>();
+        List<Integer> exits = new ArrayList<>();
+        try {
+            for (int k = 0; k < recordedLength; k++) {
+                compileLine(recordedLines[k], recordedNext[k], steps, exits);
+            }
+        } catch (Unsupported e) {
+            return null;
+        }
+
+        int[] exitArray = new int[exits.size()];
+        for (int i = 0; i < exitArray.length; i++) {
+            exitArray[i] = exits.get(i);
+        }
+        return new Trace(recordingHeader, steps.toArray(new Step[0]), exitArray);
+    }
+
+    private void add(List<Step> steps, List<Integer> exits, Step step, int exit) {
+        steps.add(step);
+        exits.add(exit);
+    }
+
+    private void compileLine(int line, int next, List<Step> steps, List<Integer> exits) {
+        tokens = program.tokens.get(line);
+        current = 0;
+
+        if (verbose) {
+            String message = "Executing line " + program.lineNumbers[line] + ": " + program.code[line];
+            add(steps, exits, slots -> {
+                output.println(message);
+                return true;
+            }, -1);
+        }
+
+        while (!isAtEnd()) {
+            Token token = advance();
+            switch (token.type) {
+                case LET:
+                    compileAssignment(advance(), "LET statement: ", steps, exits);
+                    break;
+                case IDENTIFIER:
+                    compileAssignment(token, "Assignment: ", steps, exits);
+                    break;
+                case PRINT:
+                    compilePrint(steps, exits);
+                    break;
+                case READ:
+                    compileRead(steps, exits);
+                    break;
+                case DATA:
+                    current = tokens.size() - 1; // Collected before the program runs
+                    break;
+                case IF:
+                    compileIf(line, next, steps, exits);
+                    return;
+                case WHILE:
+                    compileWhile(line, next, steps, exits);
+                    return;
+                case GOTO:
+                case WEND:
+                    return; // Unconditional, the trace simply continues with the recorded next line
+                default:
+                    throw new Unsupported();
+            }
+        }
+    }
+
+    private void compileAssignment(Token identifier, String label, List<Step> steps, List<Integer> exits) {
+        advance(); // '='
+        Expr expr = compileExpression();
+        int slot = symbols.slot(identifier.lexeme);
+        // Stores go through the SymbolTable so the variable is marked as defined; its values array is slots
+        if (!verbose) {
+            add(steps, exits, slots -> {
+                symbols.set(slot, expr.eval(slots));
+                return true;
+            }, -1);
+        } else {
+            String prefix = label + identifier.lexeme + " = ";
+            add(steps, exits, slots -> {
+                double result = expr.eval(slots);
+                symbols.set(slot, result);
+                output.print(prefix).println(result);
+                return true;
+            }, -1);
+        }
+    }
+
+    private void compilePrint(List<Step> steps, List<Integer> exits) {
+        Token expression = advance();
+        if (expression.type == TokenType.STRING) {
+            String text = expression.lexeme.substring(1, expression.lexeme.length() - 1);
+            add(steps, exits, slots -> {
+                output.println(text);
+                return true;
+            }, -1);
+            return;
+        }
+
+        // Checked on every run: a line outside the trace may assign the variable later
+        int slot = symbols.slot(expression.lexeme);
+        String message = "Undefined variable: " + expression.lexeme;
+        add(steps, exits, slots -> {
+            if (symbols.isDefined(slot)) {
+                output.println(slots[slot]);
+            } else {
+                output.println(message);
+            }
+            return true;
+        }, -1);
+    }
+
+    private void compileRead(List<Step> steps, List<Integer> exits) {
+        do {
+            int slot = symbols.slot(advance().lexeme);
+            add(steps, exits, slots -> {
+                if (Parser.dataPointer >= Parser.dataValues.length) {
+                    throw new RuntimeException("Out of DATA.");
+                }
+                symbols.set(slot, Parser.dataValues[Parser.dataPointer++]);
+                return true;
+            }, -1);
+        } while (match(TokenType.COMMA));
+    }
+
+    // Guard on the recorded direction of the branch
+    private void compileIf(int line, int next, List<Step> steps, List<Integer> exits) {
+        Step condition = compileCondition();
+        int target = program.jumpTargets[line];
+        if (target == line + 1) {
+            return; // Both directions lead to the same line, nothing to guard
+        }
+        if (next == target) {
+            add(steps, exits, condition, line + 1);
+        } else {
+            add(steps, exits, slots -> !condition.run(slots), target);
+        }
+    }
+
+    private void compileWhile(int line, int next, List<Step> steps, List<Integer> exits) {
+        Step condition = compileCondition();
+        int after = program.loopPartners[line] + 1;
+        int exitLine = after < program.size() ? after : Parser.HALT;
+        if (next == line + 1) {
+            add(steps, exits, condition, exitLine);
+        } else {
+            add(steps, exits, slots -> !condition.run(slots), line + 1);
+        }
+    }
+
+    private Step compileCondition() {
+        Expr left = compileValue();
+        TokenType operator = advance().type;
+        Expr right = compileValue();
+        switch (operator) {
+            case LESS: return slots -> left.eval(slots) < right.eval(slots);
+            case LESS_EQUAL: return slots -> left.eval(slots) <= right.eval(slots);
+            case GREATER: return slots -> left.eval(slots) > right.eval(slots);
+            case GREATER_EQUAL: return slots -> left.eval(slots) >= right.eval(slots);
+            case EQUALS: return slots -> left.eval(slots) == right.eval(slots);
+            case NOT_EQUALS: return slots -> left.eval(slots) != right.eval(slots);
+            default: throw new Unsupported();
+        }
+    }
+
+    // Same left-to-right evaluation as Parser, without operator precedence
+    private Expr compileExpression() {
+        Expr result = compileValue();
+        while (!isAtEnd() && isArithmeticOperator(peek().type)) {
+            TokenType operator = advance().type;
+            result = binary(operator, result, compileValue());
+        }
+        return result;
+    }
+
+    private Expr compileValue() {
+        Token token = advance();
+        if (token.type == TokenType.NUMBER) {
+            return new Constant((double) token.literal);
+        } else if (token.type == TokenType.IDENTIFIER) {
+            int slot = symbols.slot(token.lexeme);
+            if (!symbols.isDefined(slot)) {
+                throw new Unsupported(); // Would fail in the interpreter; let it report the error
+            }
+            return new Variable(slot);
+        } else if (token.type == TokenType.LEFT_PAREN) {
+            Expr result = compileExpression();
+            advance(); // ')'
+            return result;
+        }
+        throw new Unsupported();
+    }
+
+    private Expr binary(TokenType operator, Expr left, Expr right) {
+        // Fold constants and bake slots for the common variable-constant and variable-variable shapes
+        if (left instanceof Constant && right instanceof Constant
+                && operator != TokenType.DIVIDE && operator != TokenType.MOD) {
+            double a = ((Constant) left).value;
+            double b = ((Constant) right).value;
+            return new Constant(operator == TokenType.PLUS ? a + b : operator == TokenType.MINUS ? a - b : a * b);
+        }
+        if (left instanceof Variable && right instanceof Constant) {
+            int a = ((Variable) left).slot;
+            double b = ((Constant) right).value;
+            switch (operator) {
+                case PLUS: return slots -> slots[a] + b;
+                case MINUS: return slots -> slots[a] - b;
+                case MULTIPLY: return slots -> slots[a] * b;
+                default: break;
+            }
+        }
+        if (left instanceof Variable && right instanceof Variable) {
+            int a = ((Variable) left).slot;
+            int b = ((Variable) right).slot;
+            switch (operator) {
+                case PLUS: return slots -> slots[a] + slots[b];
+                case MINUS: return slots -> slots[a] - slots[b];
+                case MULTIPLY: return slots -> slots[a] * slots[b];
+                default: break;
+            }
+        }
+        switch (operator) {
+            case PLUS: return slots -> left.eval(slots) + right.eval(slots);
+            case MINUS: return slots -> left.eval(slots) - right.eval(slots);
+            case MULTIPLY: return slots -> left.eval(slots) * right.eval(slots);
+            case DIVIDE:
+                return slots -> {
+                    double dividend = left.eval(slots);
+                    double divisor = right.eval(slots);
+                    if (divisor == 0) {
+                        throw new RuntimeException("Division by zero.");
+                    }
+                    return dividend / divisor;
+                };
+            case MOD:
+                return slots -> {
+                    double dividend = left.eval(slots);
+                    double divisor = right.eval(slots);
+                    if (divisor == 0) {
+                        throw new RuntimeException("Modulo by zero.");
+                    }
+                    return dividend % divisor;
+                };
+            default:
+                throw new Unsupported();
+        }
+    }
+
+    private boolean isArithmeticOperator(TokenType type) {
+        return type == TokenType.PLUS || type == TokenType.MINUS ||
+                type == TokenType.MULTIPLY || type == TokenType.DIVIDE ||
+                type == TokenType.MOD;
+    }
+
+    private boolean match(TokenType type) {
+        if (!isAtEnd() && peek().type == type) {
+            advance();
+            return true;
+        }
+        return false;
+    }
+
+    private boolean isAtEnd() {
+        return peek().type == TokenType.EOF;
+    }
+
+    private Token peek() {
+        return tokens.get(current);
+    }
+
+    private Token advance() {
+        if (!isAtEnd()) {
+            current++;
+        }
+        return tokens.get(current - 1);
+    }
+}
@@ -0,0 +1,135 @@
+package interpreter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.channels.Channels;
+
+/**
+ * Worker process started by the Supervisor.
+ * It reads jobs from stdin, runs each one with its own interpreter state, and writes the result to stdout.
+ * The worker exits when stdin is closed.
+ *
+ * Protocol (DataInputStream / DataOutputStream):
+ * - request: int program length, program text (UTF-8), int input length, input bytes for INPUT
+ * - response: int MAGIC, then frames while the program runs:
+ *   - OUTPUT, int length, output bytes: program output, sent as the output pipeline writes it
+ *   - RESULT, byte status (OK or FAILED), UTF error message, long heap live after the last GC: ends the response
+ * The JVM itself may write to stdout when it dies (e.g. on OutOfMemoryError), so the Supervisor checks MAGIC
+ * and the frame types before trusting a response.
+ */
+public class Worker {
+    static final int MAGIC = 0x42415343; // "BASC"
+    static final byte OK = 0;
+    static final byte FAILED = 1;
+    static final byte OUTPUT = 2; // Frame with program output
+    static final byte RESULT = 3; // Frame that ends a response
+    static final int MAX_FRAME_LENGTH = 1 << 20; // Longer OUTPUT frames mean the stream is not a response
+
+    private static final int MAX_ERROR_LENGTH = 16 * 1024; // writeUTF is limited to 64 KB
+
+    public static void main(String[] args) throws IOException {
+        DataInputStream requests = new DataInputStream(new BufferedInputStream(new FileInputStream(FileDescriptor.in)));
+        DataOutputStream responses = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+        System.setOut(System.err); // Stdout carries the protocol, anything else goes to stderr
+
+        Interpreter interpreter = new Interpreter();
+        interpreter.setVerbose(false);
+        // Output goes to the Supervisor as it is printed, so a worker never holds more than the pipeline buffer
+        interpreter.setOutput(Channels.newChannel(new FrameOutputStream(responses)));
+
+        while (true) {
+            int programLength;
+            try {
+                programLength = requests.readInt();
+            } catch (EOFException e) {
+                return; // Supervisor closed the pipe
+            }
+            byte[] programText = new byte[programLength];
+            requests.readFully(programText);
+            byte[] inputData = new byte[requests.readInt()];
+            requests.readFully(inputData);
+
+            responses.writeInt(MAGIC);
+            responses.flush();
+            byte status = OK;
+            String error = "";
+            try {
+                ProgramStore programLines = interpreter.readProgram(
+                        Channels.newChannel(new ByteArrayInputStream(programText)));
+                interpreter.runProgram(programLines, NumberReader.of(inputData));
+            } catch (RuntimeException e) {
+                status = FAILED;
+                error = e.getMessage() != null ? e.getMessage() : e.toString();
+                if (error.length() > MAX_ERROR_LENGTH) {
+                    error = error.substring(0, MAX_ERROR_LENGTH) + "...";
+                }
+            }
+
+            responses.writeByte(RESULT);
+            responses.writeByte(status);
+            responses.writeUTF(error);
+            responses.writeLong(liveHeap());
+            responses.flush();
+        }
+    }
+
+    /**
+     * Heap in use after the last garbage collection, summed over the heap pools.
+     * Unlike totalMemory() - freeMemory() this leaves out garbage that has not been collected yet,
+     * so a worker is only recycled for memory its programs really keep. Pools not collected yet count as 0.
+     */
+    static long liveHeap() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                MemoryUsage afterCollection = pool.getCollectionUsage();
+                if (afterCollection != null) {
+                    used += afterCollection.getUsed();
+                }
+            }
+        }
+        return used;
+    }
+
+    /**
+     * Sends every write as one OUTPUT frame. Used by the output pipeline's writer thread only.
+     */
+    private static final class FrameOutputStream extends OutputStream {
+        private final DataOutputStream responses;
+
+        FrameOutputStream(DataOutputStream responses) {
+            this.responses = responses;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                int frame = Math.min(length, MAX_FRAME_LENGTH);
+                responses.writeByte(OUTPUT);
+                responses.writeInt(frame);
+                responses.write(bytes, offset, frame);
+                offset += frame;
+                length -= frame;
+            }
+            responses.flush();
+        }
+    }
+}